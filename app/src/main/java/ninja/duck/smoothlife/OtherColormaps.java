@@ -1,264 +0,0 @@
-package ninja.duck.smoothlife;
-
-public class OtherColormaps {
-
-   public static final float[][] _better_rainbow_data =  {
-           {0.000000f, 0.000000f, 0.000000f},
-{0.250000f, 0.000000f, 0.001467f},
-{0.297302f, 0.000000f, 0.003494f},
-{0.329019f, 0.000000f, 0.005809f},
-{0.353553f, 0.000000f, 0.008335f},
-{0.373837f, 0.000000f, 0.011033f},
-{0.391271f, 0.000000f, 0.013878f},
-{0.406644f, 0.000000f, 0.016853f},
-{0.420448f, 0.000000f, 0.019944f},
-{0.433013f, 0.000000f, 0.023142f},
-{0.444570f, 0.000000f, 0.026440f},
-{0.455290f, 0.000000f, 0.029830f},
-{0.465302f, 0.000000f, 0.033308f},
-{0.474707f, 0.000000f, 0.036869f},
-{0.483584f, 0.000000f, 0.040510f},
-{0.491997f, 0.000000f, 0.044226f},
-{0.500000f, 0.000000f, 0.048015f},
-{0.507636f, 0.000000f, 0.051876f},
-{0.514942f, 0.000000f, 0.055804f},
-{0.521949f, 0.000000f, 0.059799f},
-{0.528686f, 0.000000f, 0.063858f},
-{0.535174f, 0.000000f, 0.067980f},
-{0.541434f, 0.000000f, 0.072163f},
-{0.547485f, 0.000000f, 0.076407f},
-{0.553341f, 0.000000f, 0.080709f},
-{0.559017f, 0.000000f, 0.085069f},
-{0.564525f, 0.000000f, 0.089486f},
-{0.569877f, 0.000000f, 0.093959f},
-{0.575082f, 0.000000f, 0.098486f},
-{0.580149f, 0.000000f, 0.103068f},
-{0.585087f, 0.000000f, 0.107703f},
-{0.589903f, 0.000000f, 0.112391f},
-{0.594604f, 0.000000f, 0.117131f},
-{0.599195f, 0.000000f, 0.121923f},
-{0.603684f, 0.000000f, 0.126766f},
-{0.608075f, 0.000000f, 0.131660f},
-{0.612372f, 0.000000f, 0.136603f},
-{0.616581f, 0.000000f, 0.141597f},
-{0.620706f, 0.000000f, 0.146640f},
-{0.624750f, 0.000000f, 0.151732f},
-{0.628717f, 0.000000f, 0.156872f},
-{0.632610f, 0.000000f, 0.162062f},
-{0.636432f, 0.000000f, 0.167299f},
-{0.640187f, 0.000000f, 0.172584f},
-{0.643877f, 0.000000f, 0.177917f},
-{0.647505f, 0.000000f, 0.183298f},
-{0.651073f, 0.000000f, 0.188726f},
-{0.654583f, 0.000000f, 0.194201f},
-{0.658037f, 0.000000f, 0.199723f},
-{0.661438f, 0.000000f, 0.205292f},
-{0.664787f, 0.000000f, 0.210908f},
-{0.668086f, 0.000000f, 0.216571f},
-{0.671337f, 0.000000f, 0.222280f},
-{0.674542f, 0.000000f, 0.228036f},
-{0.677702f, 0.000000f, 0.233838f},
-{0.680817f, 0.000000f, 0.239687f},
-{0.683891f, 0.000000f, 0.245582f},
-{0.686924f, 0.000000f, 0.251524f},
-{0.689917f, 0.000000f, 0.257512f},
-{0.692872f, 0.000000f, 0.263547f},
-{0.695789f, 0.000000f, 0.269628f},
-{0.698671f, 0.000000f, 0.275756f},
-{0.701517f, 0.000000f, 0.281930f},
-{0.704328f, 0.000000f, 0.288151f},
-{0.707107f, 0.000000f, 0.294419f},
-{0.709853f, 0.000000f, 0.300733f},
-{0.712567f, 0.000000f, 0.307094f},
-{0.715251f, 0.000000f, 0.313502f},
-{0.717905f, 0.000000f, 0.319958f},
-{0.720530f, 0.000000f, 0.326460f},
-{0.723127f, 0.000000f, 0.333010f},
-{0.725696f, 0.000000f, 0.339607f},
-{0.728238f, 0.000000f, 0.346252f},
-{0.730753f, 0.000000f, 0.352944f},
-{0.733243f, 0.000000f, 0.359684f},
-{0.735708f, 0.000000f, 0.366473f},
-{0.738148f, 0.000000f, 0.373309f},
-{0.740564f, 0.000000f, 0.380194f},
-{0.742957f, 0.000000f, 0.387128f},
-{0.745327f, 0.000000f, 0.394110f},
-{0.747674f, 0.000000f, 0.401142f},
-{0.750000f, 0.000000f, 0.408222f},
-{0.752304f, 0.000000f, 0.415352f},
-{0.754587f, 0.000000f, 0.422532f},
-{0.756850f, 0.000000f, 0.429762f},
-{0.759093f, 0.000000f, 0.437042f},
-{0.761315f, 0.000000f, 0.444372f},
-{0.763519f, 0.000000f, 0.451754f},
-{0.765704f, 0.000000f, 0.459186f},
-{0.767870f, 0.000000f, 0.466669f},
-{0.770018f, 0.000000f, 0.474205f},
-{0.772148f, 0.000000f, 0.481792f},
-{0.774260f, 0.000000f, 0.489431f},
-{0.776356f, 0.000000f, 0.497123f},
-{0.778434f, 0.000000f, 0.504868f},
-{0.780496f, 0.000000f, 0.512666f},
-{0.782542f, 0.000000f, 0.520517f},
-{0.784572f, 0.000000f, 0.528423f},
-{0.786587f, 0.000000f, 0.536383f},
-{0.788586f, 0.000000f, 0.544397f},
-{0.790569f, 0.000000f, 0.552467f},
-{0.792538f, 0.000000f, 0.560592f},
-{0.794493f, 0.000000f, 0.568774f},
-{0.796433f, 0.000000f, 0.577011f},
-{0.798359f, 0.000000f, 0.585305f},
-{0.800271f, 0.000000f, 0.593657f},
-{0.802170f, 0.000000f, 0.602066f},
-{0.804055f, 0.000000f, 0.610534f},
-{0.805927f, 0.000000f, 0.619060f},
-{0.807787f, 0.000000f, 0.627645f},
-{0.809633f, 0.000000f, 0.636289f},
-{0.811467f, 0.000000f, 0.644994f},
-{0.813288f, 0.000000f, 0.653760f},
-{0.815098f, 0.000000f, 0.662587f},
-{0.816895f, 0.000000f, 0.671475f},
-{0.818681f, 0.000000f, 0.680426f},
-{0.820455f, 0.000000f, 0.689439f},
-{0.822217f, 0.000000f, 0.698517f},
-{0.823968f, 0.000000f, 0.707658f},
-{0.825708f, 0.000000f, 0.716864f},
-{0.827438f, 0.000000f, 0.726135f},
-{0.829156f, 0.000000f, 0.735472f},
-{0.830864f, 0.000000f, 0.744876f},
-{0.832561f, 0.000000f, 0.754347f},
-{0.834248f, 0.000000f, 0.763886f},
-{0.835925f, 0.000000f, 0.773494f},
-{0.837592f, 0.000000f, 0.783172f},
-{0.839249f, 0.000000f, 0.792919f},
-{0.840896f, 0.000000f, 0.802738f},
-{0.842534f, 0.000000f, 0.812628f},
-{0.844162f, 0.000000f, 0.822591f},
-{0.845781f, 0.000000f, 0.832627f},
-{0.847390f, 0.000000f, 0.842737f},
-{0.845059f, 0.000000f, 0.848991f},
-{0.837980f, 0.000000f, 0.850582f},
-{0.830807f, 0.000000f, 0.852165f},
-{0.823538f, 0.000000f, 0.853738f},
-{0.816174f, 0.000000f, 0.855303f},
-{0.808713f, 0.000000f, 0.856860f},
-{0.801154f, 0.000000f, 0.858408f},
-{0.793497f, 0.000000f, 0.859948f},
-{0.785741f, 0.000000f, 0.861479f},
-{0.777884f, 0.000000f, 0.863003f},
-{0.769927f, 0.000000f, 0.864518f},
-{0.761868f, 0.000000f, 0.866025f},
-{0.753706f, 0.000000f, 0.867525f},
-{0.745441f, 0.000000f, 0.869017f},
-{0.737070f, 0.000000f, 0.870501f},
-{0.728594f, 0.000000f, 0.871978f},
-{0.720010f, 0.000000f, 0.873447f},
-{0.711319f, 0.000000f, 0.874909f},
-{0.702518f, 0.000000f, 0.876363f},
-{0.693607f, 0.000000f, 0.877811f},
-{0.684584f, 0.000000f, 0.879251f},
-{0.675448f, 0.000000f, 0.880684f},
-{0.666197f, 0.000000f, 0.882110f},
-{0.656831f, 0.000000f, 0.883530f},
-{0.647347f, 0.000000f, 0.884942f},
-{0.637745f, 0.000000f, 0.886348f},
-{0.628022f, 0.000000f, 0.887747f},
-{0.618178f, 0.000000f, 0.889140f},
-{0.608210f, 0.000000f, 0.890526f},
-{0.598117f, 0.000000f, 0.891905f},
-{0.587897f, 0.000000f, 0.893279f},
-{0.577549f, 0.000000f, 0.894645f},
-{0.567070f, 0.000000f, 0.896006f},
-{0.556458f, 0.000000f, 0.897361f},
-{0.545712f, 0.000000f, 0.898709f},
-{0.534830f, 0.000000f, 0.900051f},
-{0.523809f, 0.000000f, 0.901388f},
-{0.512647f, 0.000000f, 0.902718f},
-{0.501342f, 0.000000f, 0.904043f},
-{0.489891f, 0.000000f, 0.905362f},
-{0.478293f, 0.000000f, 0.906675f},
-{0.466544f, 0.000000f, 0.907982f},
-{0.454642f, 0.000000f, 0.909284f},
-{0.442584f, 0.000000f, 0.910580f},
-{0.430368f, 0.000000f, 0.911871f},
-{0.417990f, 0.000000f, 0.913156f},
-{0.405447f, 0.000000f, 0.914436f},
-{0.392737f, 0.000000f, 0.915710f},
-{0.379856f, 0.000000f, 0.916980f},
-{0.366800f, 0.000000f, 0.918243f},
-{0.353566f, 0.000000f, 0.919502f},
-{0.340151f, 0.000000f, 0.920756f},
-{0.326551f, 0.000000f, 0.922004f},
-{0.312761f, 0.000000f, 0.923248f},
-{0.298777f, 0.000000f, 0.924486f},
-{0.284596f, 0.000000f, 0.925720f},
-{0.270213f, 0.000000f, 0.926948f},
-{0.255623f, 0.000000f, 0.928172f},
-{0.240821f, 0.000000f, 0.929391f},
-{0.225803f, 0.000000f, 0.930605f},
-{0.210562f, 0.000000f, 0.931814f},
-{0.195094f, 0.000000f, 0.933019f},
-{0.179392f, 0.000000f, 0.934219f},
-{0.163451f, 0.000000f, 0.935414f},
-{0.147264f, 0.000000f, 0.936605f},
-{0.130825f, 0.000000f, 0.937792f},
-{0.114127f, 0.000000f, 0.938973f},
-{0.097162f, 0.000000f, 0.940151f},
-{0.079923f, 0.000000f, 0.941324f},
-{0.062401f, 0.000000f, 0.942492f},
-{0.044589f, 0.000000f, 0.943657f},
-{0.026478f, 0.000000f, 0.944817f},
-{0.008057f, 0.000000f, 0.945972f},
-{0.000000f, 0.010682f, 0.947124f},
-{0.000000f, 0.029750f, 0.948271f},
-{0.000000f, 0.049159f, 0.949414f},
-{0.000000f, 0.068919f, 0.950554f},
-{0.000000f, 0.089044f, 0.951689f},
-{0.000000f, 0.109546f, 0.952819f},
-{0.000000f, 0.130438f, 0.953946f},
-{0.000000f, 0.151737f, 0.955069f},
-{0.000000f, 0.173457f, 0.956188f},
-{0.000000f, 0.195616f, 0.957303f},
-{0.000000f, 0.218231f, 0.958415f},
-{0.000000f, 0.241321f, 0.959522f},
-{0.000000f, 0.264906f, 0.960626f},
-{0.000000f, 0.289009f, 0.961725f},
-{0.000000f, 0.313654f, 0.962821f},
-{0.000000f, 0.338865f, 0.963914f},
-{0.000000f, 0.364670f, 0.965002f},
-{0.000000f, 0.391098f, 0.966087f},
-{0.000000f, 0.418183f, 0.967168f},
-{0.000000f, 0.445958f, 0.968246f},
-{0.000000f, 0.474462f, 0.969320f},
-{0.000000f, 0.503736f, 0.970390f},
-{0.000000f, 0.533826f, 0.971457f},
-{0.000000f, 0.564781f, 0.972521f},
-{0.000000f, 0.596658f, 0.973581f},
-{0.000000f, 0.629516f, 0.974637f},
-{0.000000f, 0.663425f, 0.975690f},
-{0.000000f, 0.698459f, 0.976740f},
-{0.000000f, 0.734704f, 0.977786f},
-{0.000000f, 0.772255f, 0.978829f},
-{0.000000f, 0.811220f, 0.979869f},
-{0.000000f, 0.851724f, 0.980905f},
-{0.000000f, 0.893907f, 0.981938f},
-{0.000000f, 0.937934f, 0.982968f},
-{0.000000f, 0.983995f, 0.983995f},
-{0.000000f, 0.985018f, 0.937722f},
-{0.000000f, 0.986038f, 0.888918f},
-{0.000000f, 0.987056f, 0.837263f},
-{0.000000f, 0.988069f, 0.782368f},
-{0.000000f, 0.989080f, 0.723750f},
-{0.000000f, 0.990088f, 0.660804f},
-{0.000000f, 0.991093f, 0.592749f},
-{0.000000f, 0.992094f, 0.518557f},
-{0.000000f, 0.993093f, 0.436827f},
-{0.000000f, 0.994088f, 0.345572f},
-{0.000000f, 0.995081f, 0.241828f},
-{0.000000f, 0.996071f, 0.120844f},
-{1.994115f, 0.997057f, 0.000000f},
-{1.996082f, 0.998041f, 0.000000f},
-{1.998044f, 0.999022f, 0.000000f},
-
-   };
-}
@@ -0,0 +1,88 @@
+package ninja.duck.smoothlife;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import org.bytedeco.javacpp.Pointer;
+
+import java.util.Locale;
+
+/**
+ * Small text overlay with live performance numbers.
+ * <p>
+ * The text is only rebuilt every {@link #UPDATE_MILLIS} so formatting strings
+ * doesn't show up in the frame time it is trying to measure. Drawing the
+ * cached lines is just a handful of drawText calls.
+ */
+public class PerfHud {
+    private static final long UPDATE_MILLIS = 500;
+    private static final int MAX_LINES = 8;
+
+    private final Paint text_paint;
+    private final Paint back_paint;
+    private final String lines[] = new String[MAX_LINES];
+    private int line_count = 0;
+    private long last_update = 0;
+
+    public PerfHud() {
+        text_paint = new Paint();
+        text_paint.setAntiAlias(true);
+        text_paint.setColor(Color.WHITE);
+        text_paint.setTypeface(Typeface.MONOSPACE);
+        text_paint.setTextSize(28f);
+        back_paint = new Paint();
+        back_paint.setColor(0xA0000000);
+    }
+
+    /**
+     * Rebuild the overlay text if it is stale.
+     *
+     * @param engine_desc short description of the simulation engine in use
+     */
+    public void update(FrameStats stats, int width, int height, int scale, String engine_desc) {
+        long now = System.currentTimeMillis();
+        if(now - last_update < UPDATE_MILLIS) {
+            return;
+        }
+        last_update = now;
+
+        int n = 0;
+        lines[n++] = String.format(Locale.US, "%5.1f fps  p50 %5.1f ms  p99 %5.1f ms",
+                stats.fps(), stats.percentile_ms(0.5), stats.percentile_ms(0.99));
+        StringBuilder sb = new StringBuilder();
+        for(int s=0; s<FrameStats.STAGE_NAMES.length; s++) {
+            sb.append(String.format(Locale.US, "%s %.1f  ", FrameStats.STAGE_NAMES[s], stats.stage_mean_ms(s)));
+        }
+        lines[n++] = sb.toString().trim();
+        lines[n++] = "grid " + width + "x" + height + "  scale " + scale;
+        lines[n++] = String.format(Locale.US, "tiles %d  color %3.0f%%  upload %3.0f%%",
+                stats.tile_total(), 100 * stats.recolored_fraction(), 100 * stats.uploaded_fraction());
+        lines[n++] = "engine " + engine_desc;
+        lines[n++] = "native " + Pointer.formatBytes(ResourceArena.live_bytes()) + " owned  "
+                + Pointer.formatBytes(Pointer.totalBytes()) + " other";
+        String planning = stats.planning_description();
+        if(!planning.isEmpty()) {
+            lines[n++] = planning;
+        }
+        line_count = n;
+    }
+
+    public void draw(Canvas canvas) {
+        if(line_count == 0) {
+            return;
+        }
+        float line_height = text_paint.getTextSize() * 1.2f;
+        float x = 16f;
+        float y = 96f;
+        float max_width = 0f;
+        for(int i=0; i<line_count; i++) {
+            max_width = Math.max(max_width, text_paint.measureText(lines[i]));
+        }
+        canvas.drawRect(x - 8f, y - line_height, x + max_width + 8f, y + line_height * (line_count - 1) + 8f, back_paint);
+        for(int i=0; i<line_count; i++) {
+            canvas.drawText(lines[i], x, y + i * line_height, text_paint);
+        }
+    }
+}
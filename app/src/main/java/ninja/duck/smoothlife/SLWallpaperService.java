@@ -5,21 +5,47 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Handler;
 import android.service.wallpaper.WallpaperService;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
 import org.bytedeco.fftw.global.fftw3;
-import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.Pointer;
 
-import java.util.Random;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import androidx.preference.PreferenceManager;
 
 public class SLWallpaperService extends WallpaperService {
     private static final String TAG = "WallpaperService";
 
+    // Plans, kernels and rule tables for a new configuration get built here
+    // while the old one keeps drawing
+    private static final ExecutorService builder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "SimulationBuilder");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /** Not a setting: when the settings last imported a palette, so palettes get loaded again. */
+    static final String PALETTES_IMPORTED = "palettes_imported";
+
+    // The picker preview, home screen and lock screen each get an engine,
+    // but they all show this one simulation
+    private final SharedSimulation shared = new SharedSimulation();
+
     public SLWallpaperService() {
     }
 
@@ -28,554 +54,857 @@ public class SLWallpaperService extends WallpaperService {
         Log.d(TAG, "Creating engine");
         return new SLWallpaperEngine();
     }
-    private class SLWallpaperEngine extends Engine implements SharedPreferences.OnSharedPreferenceChangeListener {
-        private boolean visible;
+
+    /**
+     * The simulation every engine shows. It steps once per frame and each
+     * visible engine colors and draws the result at its own surface size.
+     * <p>
+     * Engines attach once they have a surface and detach when it goes away.
+     * The first one to attach builds the simulation (or restores it from the
+     * last checkpoint) and the last one to detach shuts it down. All engine
+     * callbacks come in on the main thread, so this needs no locking beyond
+     * what the step and build threads already had.
+     */
+    private class SharedSimulation implements SharedPreferences.OnSharedPreferenceChangeListener {
+        final List<SLWallpaperEngine> engines = new ArrayList<>();
+        // Engines being drawn this frame
+        final List<SLWallpaperEngine> showing = new ArrayList<>();
+        Simulation sim;
         int width;
         int height;
-        int last_width = 0;
-        int last_height = 0;
-        int actual_width;
-        int actual_height;
-        double field[];
-        int pixels[];
-        Rules rules;
-        Multipliers multipliers;
-        Paint paint;
-        Bitmap bitmap[];
-        int bitmap_index = 0;
-        int dead_count = 0;
-
-        fftw3.fftw_plan plan_forward = null;
-        fftw3.fftw_plan plan_reverse = null;
-        DoublePointer doublepointer_in_forward;
-        DoublePointer doublepointer_out_forward;
-        DoublePointer doublepointer_in_reverse_m;
-        DoublePointer doublepointer_out_reverse_m;
-        DoublePointer doublepointer_in_reverse_n;
-        DoublePointer doublepointer_out_reverse_n;
 
         ColorMap cmap;
+        PaletteCycle palette;
+        AutoContrast contrast = null;
+        // The palette with the contrast curve folded in, what gets colored with
+        ColorMap colors;
         int color_scaling;
+        // PixelBuffer format frames are packed in, null to set pixels on ARGB_8888 bitmaps
+        String pixel_format = null;
         int scale = 4;
+        int base_scale = 4;
+        boolean auto_quality = false;
+        QualityGovernor governor = new QualityGovernor(33);
         int frame_delay;
-        double dt;
-        double last_dt = -2;
-        double inner_radius = 7.0;
-        double outer_radius = 3*inner_radius;
+
+        // Settings that rebuild part of the simulation are applied once they
+        // have stopped changing for a moment, so a burst of edits (or a
+        // change reported twice) costs one rebuild
+        static final int RECONFIGURE_DEBOUNCE_MILLIS = 300;
+        // A configuration being built in the background, swapped in by draw()
+        Simulation.Rebuild rebuild = null;
+        int rebuild_scale;
+        long rebuild_start;
+
+        // Frame interpolation: the simulation steps every frame_delay in the
+        // background while frames blend between the last two results
+        static final int INTERPOLATED_FRAME_DELAY = 33;
+        boolean interpolate = false;
+        Thread sim_thread = null;
+        double prev_field[];
+        double next_field[];
+        double blend_field[];
+        long sim_start_time = 0;
+        long next_field_time = 0;
+        long sim_interval = 1;
+        long sim_nanos = 0;
+
+        // Checkpoints so the pattern survives the surface going away
+        static final long CHECKPOINT_MILLIS = 60 * 1000;
+        static final String SNAPSHOT_FILE = "smoothlife.snap";
+        /** Coarsest scale the memory budget may push the grid to. */
+        static final int MAX_SCALE = 32;
+        // The pixel_format that uses no PixelBuffer
+        static final String SET_PIXELS = "set_pixels";
+        long last_checkpoint = 0;
 
         SharedPreferences prefs;
-        String last_pref_value = "";
         private int frame_counter = 0;
         private long frame_millis_sum = 0;
+        FrameStats stats = new FrameStats();
+        boolean show_hud = false;
 
 
-        private void make_plans() {
-            Log.d(TAG, "Making plans");
-            fftw3.fftw_set_timelimit(2.0);
-            Log.d(TAG, "Creating double pointers");
-            doublepointer_in_forward = new DoublePointer(height * width);
-            doublepointer_out_forward = new DoublePointer(height * (width/2 + 1) * 2);
-            Log.d(TAG, "Creating forward plan");
-            plan_forward = fftw3.fftw_plan_dft_r2c_2d(height, width, doublepointer_in_forward, doublepointer_out_forward, (int)fftw3.FFTW_MEASURE);
-
-            Log.d(TAG, "Creating more double pointers");
-            doublepointer_in_reverse_m = new DoublePointer(height * (width/2 + 1) * 2);
-            doublepointer_out_reverse_m = new DoublePointer(height * width);
-            doublepointer_in_reverse_n = new DoublePointer(height * (width/2 + 1) * 2);
-            doublepointer_out_reverse_n = new DoublePointer(height * width);
-            Log.d(TAG, "Creating reverse plan");
-            plan_reverse = fftw3.fftw_plan_dft_c2r_2d(height, width, doublepointer_in_reverse_m, doublepointer_out_reverse_m, (int)fftw3.FFTW_MEASURE);
-        }
-
+        /**
+         * Destroy the simulation on the builder once the builds queued ahead
+         * of it are done with its plans. A measured build can take seconds,
+         * which the main thread mustn't wait out.
+         */
         private void delete_plans() {
-            if(plan_forward != null) {
-                Log.d(TAG, "Deleting plans");
-                fftw3.fftw_destroy_plan(plan_forward);
-                Log.d(TAG, "Forward plan deleted");
-                fftw3.fftw_destroy_plan(plan_reverse);
-                Log.d(TAG, "Reverse plan deleted");
+            if(sim == null) {
+                return;
             }
+            final Simulation old = sim;
+            sim = null;
+            builder.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Log.d(TAG, "Deleting plans");
+                    old.destroy();
+                    log_native_memory();
+                }
+            });
         }
 
-        private class Rules {
-            double B1 = 0.278f;
-            double B2 = 0.365f;
-            double D1 = 0.267f;
-            double D2 = 0.445f;
-
-            double N = 0.028f;
-            double M = 0.147f;
-
-            double lookup[][];
-            int precalc_len;
-
-            double sigma(double x, double a, double alpha) {
-                double inner = -4.0f / alpha * (x - a);
-                return 1.0f / (1.0f + Math.exp(inner));
-//                if(inner < -10.0f) {
-//                    return 0.0f;
-//                } else if(inner > 10.0f) {
-//                    return 1.0f;
-//                } else {
-//                    return 1.0f / (1.0f + (double) Math.exp(inner));
-//                }
-            }
-
-            double sigma2(double x, double a, double b) {
-                return sigma(x, a, N) * (1.0f - sigma(x, b, N));
-            }
-
-            double lerp(double a, double b, double t) {
-                return (1.0f - t) * a + t * b;
-            }
+        private final Handler handler = new Handler();
 
-            double s(double n, double m) {
-                double alive = sigma(m, 0.5f, M);
-                return sigma2(n, lerp(B1, D1, alive), lerp(B2, D2, alive));
+        private final Runnable drawRunner = new Runnable() {
+            @Override
+            public void run() {
+//                Log.d(TAG, "Running");
+                draw();
             }
+        };
 
-            void precalculate(int len) {
-                Log.d(TAG, "Precalculating rules");
-                precalc_len = len;
-                double dlen = (double)(len );
-                lookup = new double[len][len];
-                for(int n=0; n<len; n++) {
-                    for(int m=0; m<len; m++) {
-                        lookup[n][m] = s(n / dlen, m / dlen);
-                    }
-                }
+        private final Runnable reinitRunner = new Runnable() {
+            @Override
+            public void run() {
+                reinit();
             }
+        };
 
-            void s_fast(double dest[], double n_arr[], double m_arr[], double dt) {
-                for(int i=0; i<n_arr.length; i++) {
-                    int n_ind = (int)(n_arr[i] * precalc_len + 0.5);
-                    int m_ind = (int)(m_arr[i] * precalc_len + 0.5);
-                    // Constrain just in case
-                    if(n_ind >= precalc_len) n_ind = precalc_len - 1;
-                    if(n_ind < 0) n_ind = 0;
-                    if(m_ind >= precalc_len) m_ind = precalc_len - 1;
-                    if(m_ind < 0) m_ind = 0;
-
-                    dest[i] = lookup[n_ind][m_ind];
-                }
-            }
+        private void schedule_reinit() {
+            handler.removeCallbacks(reinitRunner);
+            handler.postDelayed(reinitRunner, RECONFIGURE_DEBOUNCE_MILLIS);
         }
 
-        private class SmoothTimestepRules extends Rules {
-            double B1 = 0.254f;
-            double B2 = 0.340f;
-            double D1 = 0.312f;
-            double D2 = 0.518f;
-//
-//            double N = 0.028f;
-//            double M = 0.147f;
-//
-//            double lookup[][];
-//            int precalc_len;
-
-            double hard(double x, double a) {
-                return x > a ? 1.0f : 0.0f;
+        /** Start showing the simulation on {@code engine}, building it if this is the first. */
+        void attach(SLWallpaperEngine engine) {
+            engines.add(engine);
+            if(engines.size() == 1) {
+                Log.d(TAG, "First engine attached, starting the simulation");
+                PreferenceManager.setDefaultValues(getApplicationContext(), R.xml.preferences, false);
+                prefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
+                prefs.registerOnSharedPreferenceChangeListener(this);
+                // Once, and again only when the settings import one
+                load_palettes();
+                reinit();
+                restore_snapshot();
             }
-
-            double sigma(double x, double a, double alpha) {
-                return x * (1.0 - hard(alpha, 0.5)) + a * hard(alpha, 0.5);
+            else {
+                Log.d(TAG, engines.size() + " engines attached, sharing the simulation");
+                // The grid may need to grow to cover this surface too
+                reinit();
             }
+        }
 
-            double linear(double x, double a, double ea) {
-                double val = (x - a) / ea + 0.5;
-                return  Math.min(Math.max(val, 0.0), 1.0);
+        /** Stop showing the simulation on {@code engine}, shutting it down if this was the last. */
+        void detach(SLWallpaperEngine engine) {
+            if(!engines.contains(engine)) {
+                return;
             }
-
-            double sigma2(double x, double a, double b) {
-                return linear(x, a, N) * (1.0 - linear(x, b, N));
+            if(engines.size() > 1) {
+                engines.remove(engine);
+                Log.d(TAG, engines.size() + " engines still attached");
+                schedule_reinit();
+                return;
             }
-
-            double s(double n, double m) {
-                return sigma(sigma2(n, B1, D1), sigma2(n, B2, D2), m);
+            Log.d(TAG, "Last engine detached, shutting the simulation down");
+            prefs.unregisterOnSharedPreferenceChangeListener(this);
+            handler.removeCallbacks(drawRunner);
+            handler.removeCallbacks(reinitRunner);
+            join_sim_thread();
+            if(rebuild != null) {
+                // Stops at its next stage and frees what it built
+                rebuild.cancel();
+                rebuild = null;
             }
+            // Before detaching, so a preview-only simulation still isn't saved
+            save_snapshot(sim.field);
+            engines.remove(engine);
+            // Builds run in order, so this waits behind any still borrowing the plans
+            delete_plans();
+        }
 
-            void s_fast(double dest[], double n_arr[], double m_arr[], double dt) {
-                for(int i=0; i<n_arr.length; i++) {
-                    int n_ind = (int)(n_arr[i] * precalc_len + 0.5);
-                    int m_ind = (int)(m_arr[i] * precalc_len + 0.5);
-                    // Constrain just in case
-                    if(n_ind >= precalc_len) n_ind = precalc_len - 1;
-                    if(n_ind < 0) n_ind = 0;
-                    if(m_ind >= precalc_len) m_ind = precalc_len - 1;
-                    if(m_ind < 0) m_ind = 0;
-
-                    double s = lookup[n_ind][m_ind];
-//                    double m = m_arr[i];
-                    double f = dest[i];
-                    double v =  f + dt * (s - f);
-                    dest[i] = Math.min(Math.max(v, 0.0), 1.0);
+        private void log_native_memory() {
+            Log.d(TAG, "Live native memory: " + Pointer.formatBytes(ResourceArena.live_bytes()) + " owned, "
+                    + Pointer.formatBytes(Pointer.totalBytes()) + " other JavaCPP");
+        }
 
-                }
+        /** Some engine was shown or hidden. Keep stepping while any of them is visible. */
+        void visibility_changed() {
+            if(any_visible()) {
+                // Carry on from where we were rather than reseeding
+                draw();
+            } else {
+                handler.removeCallbacks(drawRunner);
+                join_sim_thread();
             }
         }
 
-        private class Multipliers {
-            int height;
-            int width;
-            double inner_r;
-            double outer_r;
-            double M[];
-            double N[];
-//            Logistic2d m;
-//            Logistic2d n;
-
-            private String TAG = "Multipliers";
-
-            public Multipliers(int height, int width, double inner_r, double outer_r) {
-                this.height = height;
-                this.width = width;
-                this.inner_r = inner_r;
-                this.outer_r = outer_r;
-
-                Log.d(TAG, "Creating logistics");
-                Logistic2d m = new Logistic2d(inner_r);
-                Logistic2d n = new Logistic2d(outer_r);
-
-                double _M[] = new double[width*height];
-                double _N[] = new double[width*height];
-                M = new double[height * (width/2 + 1) * 2];
-                N = new double[height * (width/2 + 1) * 2];
-
-                double inner_sum = m.sum;
-                double annulus_sum = n.sum - m.sum;
-                for (int r = 0; r < height; r++) {
-                    for (int c = 0; c < width; c++) {
-                        int i = r * width + c;
-                        _M[i] = m.grid[i] / inner_sum;
-                        _N[i] = (n.grid[i] - m.grid[i]) / annulus_sum;
-                    }
-                }
-
-//                // Gaussian blue test
-//                for (int r = 0; r < height; r++) {
-//                    for (int c = 0; c < width; c++) {
-//                        int i = r * width + c;
-//                        _M[i] = 0;
-//                        _N[i] = 0;
-//                    }
-//                }
-//                int size = width * height;
-//                _M[0] = 0.5;
-//                _M[width] = 0.5;
-
-//                _M[0] = 4.0/16.0;
-//                _M[1] = 2.0/16.0;
-//                _M[width] = 2.0/16.0;
-//                _M[width + 1] = 1.0/16.0;
-//                _M[width - 1] = 2.0/16.0;
-//                _M[2*width - 1] = 1.0/16.0;
-//                _M[size - width] = 2.0/16.0;
-//                _M[size - width + 1] = 1.0/16.0;
-//                _M[size - 1] = 1.0/16.0;
-
-
-                Log.d(TAG, "Putting _M");
-                doublepointer_in_forward.put(_M);
-                Log.d(TAG, "Executing forward");
-                fftw3.fftw_execute(plan_forward);
-                Log.d(TAG, "Getting M");
-                doublepointer_out_forward.get(M);
-
-                Log.d(TAG, "Doing it for N");
-                doublepointer_in_forward.put(_N);
-                fftw3.fftw_execute(plan_forward);
-                doublepointer_out_forward.get(N);
-
-
-            }
-
-            private class Logistic2d {
-                double grid[];
-                double sum;
-
-                public Logistic2d(double radius) {
-                    sum = 0;
-                    grid = new double[width*height];
-                    double logres = Math.log(Math.min(width, height)) / Math.log(2);
-                    for (int r = 0; r < height; r++) {
-                        for (int c = 0; c < width; c++) {
-                            double rr = ((r + height / 2) % height) - height / 2;
-                            double cc = ((c + width / 2) % width) - width / 2;
-                            double dist = Math.sqrt(rr * rr + cc * cc) - radius;
-                            double logistic = 1.0f / (1.0f + Math.exp(logres * dist));
-                            sum += logistic;
-                            grid[r * width + c] = logistic;
-                        }
-                    }
+        private boolean any_visible() {
+            for(SLWallpaperEngine engine : engines) {
+                if(engine.is_showing()) {
+                    return true;
                 }
             }
-
-
+            return false;
         }
 
-
-
-        private final Handler handler = new Handler();
-
-        private final Runnable drawRunner = new Runnable() {
-            @Override
-            public void run() {
-//                Log.d(TAG, "Running");
-                draw();
-            }
-        };
         public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
             String val;
             if(key.equals("color_scaling")) {
                 val = String.valueOf(prefs.getInt(key, 50));
                 Log.d(TAG, "Caught pref " + key + " changing to " + val);
                 color_scaling = prefs.getInt("color_scaling", 50);
+                recolor_outputs();
             }
             else if (key.equals("frame_delay")) {
                 frame_delay = Integer.parseInt(prefs.getString("frame_delay", "1000"));
             }
+            else if(key.equals(PALETTES_IMPORTED)) {
+                load_palettes();
+                // The chosen palette may just have been replaced
+                cmap = ColorMap.getColorMap(prefs.getString("color_map_choice", "viridis"));
+                read_palette();
+                recolor_outputs();
+            }
             else if(key.equals("color_map_choice")) {
                 cmap = ColorMap.getColorMap(prefs.getString(key, "viridis"));
+                read_palette();
+                recolor_outputs();
+            }
+            else if(key.startsWith("palette_cycle") || key.equals("auto_contrast")) {
+                read_palette();
+                recolor_outputs();
+            }
+            else if(key.equals("show_hud")) {
+                set_show_hud(prefs.getBoolean(key, false));
             }
-            else if(key.equals("smooth_timestepping")) {
-                reinit(true);
+            else if(key.equals("interpolate_frames")) {
+                join_sim_thread();
+                interpolate = prefs.getBoolean(key, false);
+                reset_interpolation();
+            }
+            else if(key.equals("auto_quality")) {
+                governor.reset();
+                schedule_reinit();
+            }
+            else if(key.equals("frame_budget")) {
+                governor.set_budget(Double.parseDouble(prefs.getString(key, "33")));
             }
             else {
-                val = prefs.getString(key, "undef");
-                Log.d(TAG, "Caught pref " + key + " changing to " + val);
-                // Sometimes we see changes twice. Watch out for that.
-                if(! last_pref_value.equals(val)) {
-                    last_pref_value = val;
-                    reinit(true);
-                }
+                Log.d(TAG, "Caught pref " + key + " changing");
+                schedule_reinit();
             }
         }
 
-        private void add_speckles() {
-            double intensity = 1.0;
-//            float count = 200f * (width * height) / (128 * 128);
-//            count *= (7.0f / inner_radius) * (7.0f / inner_radius);
-            double count = width * height / (outer_radius * 2) / (outer_radius * 2);
-            int icount = (int)count;
-//            icount = 10;
-
-            // Clear first
-            for(int i=0; i<(width * height); i++) {
-                field[i] = 0.0;
-            }
-            Random random = new Random();
-            int radius = (int)outer_radius;
-            for(int i=0; i<icount; i++) {
-                int r = random.nextInt(height - radius);
-                int c = random.nextInt(width - radius);
-                for(int rr=0; rr<radius; rr++) {
-                    for(int cc=0; cc<radius; cc++) {
-                        int index = width * (r + rr) + c + cc;
-                        field[index] = intensity;
-                    }
-                }
+        /**
+         * The simulation configuration the preferences ask for, with a grid
+         * covering the biggest of the attached engines' wallpapers.
+         */
+        private Simulation.Config read_config(int scale) {
+            int virtual_width = 0;
+            int virtual_height = 0;
+            for(SLWallpaperEngine engine : engines) {
+                virtual_width = Math.max(virtual_width, engine.actual_width);
+                virtual_height = Math.max(virtual_height, engine.actual_height);
+            }
+            Simulation.Config config = new Simulation.Config();
+            config.width = virtual_width / scale;
+            config.height = virtual_height / scale;
+            if(prefs.getBoolean("fft_friendly", true)) {
+                config.width = FftSizes.fit(config.width);
+                config.height = FftSizes.fit(config.height);
+            }
+            config.inner_radius = Integer.parseInt(prefs.getString("inner_radius", "7"));
+            if(prefs.getBoolean("smooth_timestepping", false)) {
+                config.dt = Double.parseDouble(prefs.getString("timestep", "0.2"));
+            }
+            config.integrator = prefs.getString("integrator", Integrator.EULER);
+            config.adaptive = prefs.getBoolean("adaptive_timestep", false);
+            config.pattern = prefs.getString("seed_pattern", SeedPattern.SPECKLES);
+            config.plan_flags = (int)fftw3.FFTW_MEASURE;
+            return config;
+        }
+
+        /** Estimated bytes for {@code config} and the engines showing it. */
+        private long footprint(Simulation.Config config) {
+            long bytes = MemoryBudget.simulation_bytes(config);
+            if(interpolate) {
+                bytes += MemoryBudget.interpolation_bytes(config);
+            }
+            for(SLWallpaperEngine engine : engines) {
+                bytes += engine.view_bytes(config.width, config.height);
+            }
+            return bytes;
+        }
+
+        /**
+         * Whether {@code config} or the rebuild to it would go over
+         * {@code budget}. The old simulation stays up until the rebuild is
+         * swapped in, so a new grid or new plans briefly need both.
+         */
+        private boolean over_budget(Simulation.Config config, long budget) {
+            if(footprint(config) > budget) {
+                return true;
             }
-            dead_count = 0;
+            Simulation.Config old;
+            if(sim != null) {
+                old = sim.config();
+            }
+            else {
+                // Starts on estimated plans, then measures new ones
+                old = config.copy();
+                old.plan_flags = (int)fftw3.FFTW_ESTIMATE;
+            }
+            long held = footprint(old);
+            // Coarsening can't help if the old one is over by itself, e.g.
+            // after lowering the budget
+            return held < budget && held + MemoryBudget.rebuild_bytes(old, config) > budget;
         }
 
-        public void reinit(boolean force) {
+        public void reinit() {
+            handler.removeCallbacks(reinitRunner);
+            join_sim_thread();
+            interpolate = prefs.getBoolean("interpolate_frames", false);
             frame_delay = Integer.parseInt(prefs.getString("frame_delay", "1000"));
-            scale = Integer.parseInt(prefs.getString("scale", "4"));
-            inner_radius = Integer.parseInt(prefs.getString("inner_radius", "7"));
-            dt = Double.parseDouble(prefs.getString("timestep", "0.2"));
-            Boolean is_smooth_timestepping = prefs.getBoolean("smooth_timestepping", false);
-            if (!is_smooth_timestepping) {
-                dt = -1;
-            }
-            outer_radius = inner_radius*3;
-            width = actual_width / scale;
-            height = actual_height / scale;
-            if(force || last_width != width || last_height != height || last_dt != dt) {
-                delete_plans();
-                make_plans();
-                field = new double[width * height];
-                pixels = new int[width * height];
-                multipliers = new Multipliers(height, width, inner_radius, outer_radius);
-                if (is_smooth_timestepping) {
-                    rules = new SmoothTimestepRules();
+            base_scale = Integer.parseInt(prefs.getString("scale", "4"));
+            auto_quality = prefs.getBoolean("auto_quality", false);
+            governor.set_budget(Double.parseDouble(prefs.getString("frame_budget", "33")));
+            governor.set_base_scale(base_scale);
+            read_pixel_format();
+            int new_scale = auto_quality ? governor.scale() : base_scale;
+            Simulation.Config config = read_config(new_scale);
+            int budget_mb = Integer.parseInt(prefs.getString("memory_budget", "64"));
+            long budget = budget_mb * 1024L * 1024L;
+            if(over_budget(config, budget)) {
+                // In place transforms first, then coarser grids until it fits
+                config.low_memory = true;
+                while(over_budget(config, budget) && new_scale < MAX_SCALE) {
+                    new_scale++;
+                    config = read_config(new_scale);
+                    config.low_memory = true;
+                }
+                Log.d(TAG, "Over the " + budget_mb + " MB memory budget, using in-place transforms at scale "
+                        + new_scale + " for about " + Pointer.formatBytes(footprint(config)));
+            }
+            if(rebuild != null) {
+                // Superseded before it was ready
+                rebuild.cancel();
+                rebuild = null;
+            }
+            if(sim == null) {
+                Log.d(TAG, "Making quick plans and precalculating rules");
+                fftw3.fftw_set_timelimit(2.0);
+                // Measured plans take a while, so start drawing with
+                // estimated ones and upgrade in the background
+                Simulation.Config quick = config.copy();
+                quick.plan_flags = (int)fftw3.FFTW_ESTIMATE;
+                sim = new Simulation(quick);
+                sim.reseed();
+                scale = new_scale;
+                submit(sim.prepare(config), new_scale);
+            }
+            else {
+                Simulation.Rebuild next = sim.prepare(config);
+                if(next.needs_build()) {
+                    submit(next, new_scale);
                 }
                 else {
-                    rules = new Rules();
+                    // Nothing expensive, swap straight away
+                    next.run();
+                    rebuild_start = System.nanoTime();
+                    swap(next, new_scale);
                 }
-                rules.precalculate(512);
-                add_speckles();
-                last_width = width;
-                last_height = height;
-                last_dt = dt;
-                bitmap = new Bitmap[2];
-                bitmap[0] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-                bitmap[1] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
             }
+            // Engines that just attached need buffers for the current grid
+            update_grids();
             cmap = ColorMap.getColorMap(prefs.getString("color_map_choice", "viridis"));
+            read_palette();
             color_scaling = prefs.getInt("color_scaling", 50);
+            apply_colors();
+            invalidate_outputs();
+            reset_interpolation();
+            set_show_hud(prefs.getBoolean("show_hud", false));
+
+        }
 
+        private void submit(Simulation.Rebuild next, int new_scale) {
+            Log.d(TAG, "Building " + describe_changes(next.changed()) + " in the background");
+            rebuild = next;
+            rebuild_scale = new_scale;
+            rebuild_start = System.nanoTime();
+            builder.execute(next);
         }
 
-//        private void step() {
-//            int csize = height*width*2;
-//            int size = width*height;
-//            double in_buffer[] = new double[csize];
-//            double out_buffer[] = new double[csize];
-//            DoublePointer in_dp = new DoublePointer(csize);
-//            DoublePointer out_dp = new DoublePointer(csize);
-//            fftw3.fftw_plan plan_forward = fftw3.fftw_plan_dft_2d(height, width, in_dp, out_dp, (int)fftw3.FFTW_FORWARD, (int)fftw3.FFTW_ESTIMATE);
-////            fftw3.fftw_plan plan_reverse = fftw3.fftw_plan_dft_2d(height, width, in_dp, out_dp, (int)fftw3.FFTW_BACKWARD, (int)fftw3.FFTW_ESTIMATE);
-//            for(int i=0; i<csize; i++) {
-//                in_buffer[i] = 0;
-//            }
-//            in_buffer[0] = 0.5;
-//            in_buffer[width*2] = 0.5;
-//            in_dp.put(in_buffer);
-//            fftw3.fftw_execute(plan_forward);
-//            out_dp.get(out_buffer);
-//
-//            for(int r=0; r<height; r++) {
-//                for(int c=0; c<width; c++) {
-//                    field[r*width + c] = out_buffer[(r*width + c) * 2 + 0];
-////                    field[r*width + c] = m_buffer[r*width + c];
-//                }
-//            }
-//            normalize(field);
-//
-//
-//        }
-
-//        private void step() {
-//            // Test dft_r2c
-//            int csize = height*(width/2 + 1)*2;
-//            int size = width*height;
-//            double in_buffer[] = new double[size];
-//            double out_buffer[] = new double[csize];
-//            DoublePointer in_dp = new DoublePointer(size);
-//            DoublePointer out_dp = new DoublePointer(csize);
-//            fftw3.fftw_plan plan_forward = fftw3.fftw_plan_dft_r2c_2d(height, width, in_dp, out_dp, (int)fftw3.FFTW_ESTIMATE);
-////            fftw3.fftw_plan plan_reverse = fftw3.fftw_plan_dft_2d(height, width, in_dp, out_dp, (int)fftw3.FFTW_BACKWARD, (int)fftw3.FFTW_ESTIMATE);
-//            for(int i=0; i<size; i++) {
-//                in_buffer[i] = 0;
-//            }
-//            in_buffer[0] = 0.5;
-//            in_buffer[width] = 0.5;
-//            in_dp.put(in_buffer);
-//            fftw3.fftw_execute(plan_forward);
-//            out_dp.get(out_buffer);
-//
-//            for(int r=0; r<height; r++) {
-//                for(int c=0; c<(width/2+1); c++) {
-//                    field[r*width + c] = out_buffer[(r*(width/2+1) + c) * 2 + 0];
-////                    field[r*width + c] = m_buffer[r*width + c];
-//                }
-//            }
-//            normalize(field);
-//
-//
-//        }
+        /** Swap in a finished rebuild. Only between frames, with no step running. */
+        private void swap(Simulation.Rebuild next, int new_scale) {
+            int changed = sim.apply(next);
+            if((changed & Simulation.CHANGED_PATTERN) != 0) {
+                // Show the new pattern now rather than at the next die-off
+                sim.reseed();
+            }
+            scale = new_scale;
+            update_grids();
+            invalidate_outputs();
+            reset_interpolation();
+            if(changed != 0) {
+                Log.d(TAG, "Reconfigured " + describe_changes(changed) + " after "
+                        + (System.nanoTime() - rebuild_start) / 1000000 + " ms");
+                log_native_memory();
+            }
+            if(next.plan_nanos() > 0) {
+                stats.set_planning(next.plan_nanos(), next.old_nanos(), next.new_nanos(), next.upgraded());
+                Log.d(TAG, "Planning took " + next.plan_nanos() / 1000000 + " ms");
+                if(next.old_nanos() > 0) {
+                    Log.d(TAG, "Transforms take " + next.old_nanos() / 1000 + " us with the old plans, "
+                            + next.new_nanos() / 1000 + " us with the new, "
+                            + (next.upgraded() ? "upgraded" : "keeping the old"));
+                }
+            }
+        }
 
-        private void step() {
-            // Actual step
-            final int csize = height * (width/2 + 1) * 2;
-            final int size = height * width;
-            final double field_[] = new double[csize];
+        /** Match every engine's buffers to the simulation's grid. */
+        private void update_grids() {
+            width = sim.width;
+            height = sim.height;
+            for(SLWallpaperEngine engine : engines) {
+                engine.update_grid(width, height);
+            }
+            if(colors != null) {
+                // New output stages start without a palette
+                apply_colors();
+            }
+        }
 
-            final double m_buffer_[] = new double[csize];
-            final double m_buffer[] = new double[size];
-            final double n_buffer_[] = new double[csize];
-            final double n_buffer[] = new double[size];
+        /**
+         * Register the palettes loaded in the settings. Cached ones are just
+         * mapped. After this colors are looked up by name, with no disk access.
+         */
+        private void load_palettes() {
+            UserPalettes.Result result = UserPalettes.load(new File(getFilesDir(), "palettes"),
+                    new File(getCacheDir(), "palettes"));
+            if(result.compiled > 0) {
+                Log.d(TAG, "Compiled " + result.compiled + " palettes, " + result.names.size() + " in all");
+            }
+            for(String error : result.errors) {
+                Log.d(TAG, "Skipped palette " + error);
+            }
+        }
 
-            doublepointer_in_forward.put(field);
-            fftw3.fftw_execute(plan_forward);
-            doublepointer_out_forward.get(field_);
+        private void read_palette() {
+            palette = new PaletteCycle(prefs.getString("palette_cycle", PaletteCycle.OFF), cmap,
+                    ColorMap.getColorMap(prefs.getString("palette_cycle_target", "magma")),
+                    Double.parseDouble(prefs.getString("palette_cycle_period", "60")));
+            if(!prefs.getBoolean("auto_contrast", false)) {
+                contrast = null;
+            }
+            else if(contrast == null) {
+                contrast = new AutoContrast();
+            }
+            colors = contrast != null ? contrast.fold(palette.map()) : palette.map();
+        }
 
-            final double norm = size;
+        private void read_pixel_format() {
+            String format = prefs.getString("pixel_format", SET_PIXELS);
+            pixel_format = format.equals(SET_PIXELS) ? null : format;
+        }
 
-            // Doing the second FFT in a new thread is faster in the emulator
-            // But seemingly slightly slower IRL
-            Thread fft_thread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    for(int i=0; i<csize; i+=2) {
-                        double fr, fi, kr, ki;
-                        fr = field_[i];
-                        fi = field_[i + 1];
-                        kr = multipliers.M[i];
-                        ki = multipliers.M[i + 1];
-                        m_buffer_[i] = (fr * kr - fi * ki) / norm;
-                        m_buffer_[i + 1] = (fr * ki + fi * kr) / norm;
-                    }
+        /** Hand every engine's output stage the current colors. */
+        private void apply_colors() {
+            for(SLWallpaperEngine engine : engines) {
+                engine.output.set_colors(colors, contrast != null ? 50 : color_scaling);
+            }
+        }
 
-                    doublepointer_in_reverse_m.put(m_buffer_);
-                    fftw3.fftw_execute(plan_reverse);
-                    doublepointer_out_reverse_m.get(m_buffer);
-                }
-            });
+        /**
+         * Show new colors right away. The frames on screen are recolored
+         * from their indices, which is a table lookup per pixel. Only tiles
+         * the field has moved in since are quantized again.
+         */
+        private void recolor_outputs() {
+            apply_colors();
+            for(SLWallpaperEngine engine : engines) {
+                engine.redraw();
+            }
+        }
+
+        private void invalidate_outputs() {
+            for(SLWallpaperEngine engine : engines) {
+                engine.output.invalidate();
+            }
+        }
+
+        private String describe_changes(int changed) {
+            StringBuilder sb = new StringBuilder();
+            if((changed & Simulation.CHANGED_GRID) != 0) sb.append(" grid");
+            if((changed & Simulation.CHANGED_KERNELS) != 0) sb.append(" kernels");
+            if((changed & Simulation.CHANGED_RULES) != 0) sb.append(" rules");
+            if((changed & Simulation.CHANGED_STEPPING) != 0) sb.append(" stepping");
+            if((changed & Simulation.CHANGED_PATTERN) != 0) sb.append(" pattern");
+            if((changed & Simulation.CHANGED_PLANS) != 0) sb.append(" plans");
+            return sb.toString().trim();
+        }
+
+        private void set_show_hud(boolean show) {
+            show_hud = show;
+            stats.reset();
+        }
+
+        private void step() {
+            sim.step();
+            stats.add_stage(FrameStats.STAGE_FFT, sim.step_fft_nanos());
+            stats.add_stage(FrameStats.STAGE_RULES, sim.step_nanos() - sim.step_fft_nanos());
+        }
 
-            fft_thread.start();
+        private void check_dead() {
+            int reseeded = sim.check_dead();
+            if(reseeded == Simulation.RESEED_DEAD) {
+                Log.d(TAG, "Grid is dead. Reseeding");
+            }
+            else if(reseeded == Simulation.RESEED_LONELY) {
+                Log.d(TAG, "Single glider has been around too long");
+            }
+        }
 
+        private void join_sim_thread() {
+            if(sim_thread != null) {
+                try {
+                    sim_thread.join();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                sim_thread = null;
+            }
+        }
 
+        private void reset_interpolation() {
+            if(!interpolate || sim == null) {
+                prev_field = null;
+                next_field = null;
+                blend_field = null;
+                return;
+            }
+            double field[] = sim.field;
+            if(prev_field == null || prev_field.length != field.length) {
+                prev_field = new double[field.length];
+                next_field = new double[field.length];
+                blend_field = new double[field.length];
+            }
+            System.arraycopy(field, 0, prev_field, 0, field.length);
+            System.arraycopy(field, 0, next_field, 0, field.length);
+            next_field_time = System.currentTimeMillis();
+            sim_start_time = 0;
+            sim_interval = Math.max(frame_delay, 1);
+        }
 
-            for(int i=0; i<csize; i+=2) {
-                double fr, fi, kr, ki;
-                fr = field_[i];
-                fi = field_[i + 1];
+        /** What an engine should color when it has to redraw between frames. */
+        double[] current_field() {
+            return interpolate ? blend_field : sim.field;
+        }
 
-                kr = multipliers.N[i];
-                ki = multipliers.N[i + 1];
-                n_buffer_[i] = (fr * kr - fi * ki) / norm;
-                n_buffer_[i + 1] = (fr * ki + fi * kr) / norm;
+        private File snapshot_file() {
+            return new File(getFilesDir(), SNAPSHOT_FILE);
+        }
 
-//                kr = multipliers.M[i];
-//                ki = multipliers.M[i + 1];
-//                m_buffer_[i] = (fr * kr - fi * ki) / norm;
-//                m_buffer_[i + 1] = (fr * ki + fi * kr) / norm;
+        /**
+         * Checkpoint {@code src} in the background. It must not be changing
+         * while this runs. Skipped if only the picker preview is showing.
+         */
+        private void save_snapshot(double src[]) {
+            if(src == null) {
+                return;
+            }
+            boolean preview_only = true;
+            for(SLWallpaperEngine engine : engines) {
+                preview_only &= engine.isPreview();
+            }
+            if(preview_only) {
+                return;
+            }
+            sim.capture(src).write_async(snapshot_file());
+            last_checkpoint = System.currentTimeMillis();
+        }
 
+        private void restore_snapshot() {
+            long start = System.nanoTime();
+            Snapshot snap;
+            try {
+                snap = Snapshot.read(snapshot_file());
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read snapshot", e);
+                // It won't get any better, and the next checkpoint replaces it
+                snapshot_file().delete();
+                return;
             }
+            if(snap == null || !sim.restore(snap)) {
+                Log.d(TAG, "No usable snapshot");
+                return;
+            }
+            invalidate_outputs();
+            reset_interpolation();
+            last_checkpoint = System.currentTimeMillis();
+            Log.d(TAG, "Restored snapshot in " + (System.nanoTime() - start) / 1000 + " us");
+        }
 
-//            doublepointer_in_reverse_m.put(m_buffer_);
-//            fftw3.fftw_execute(plan_reverse);
-//            doublepointer_out_reverse_m.get(m_buffer);
+        private void draw_stepped() {
+            Thread stepper_thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    step();
+                    for(SLWallpaperEngine engine : showing) {
+                        engine.update_pixels(sim.field);
+                    }
+                    check_dead();
+                }
+            });
 
-            doublepointer_in_reverse_n.put(n_buffer_);
-            fftw3.fftw_execute_dft_c2r(plan_reverse, doublepointer_in_reverse_n, doublepointer_out_reverse_n);
-            doublepointer_out_reverse_n.get(n_buffer);
+            stepper_thread.start();
+            for(SLWallpaperEngine engine : showing) {
+                engine.present(1 - engine.bitmap_index);
+            }
 
             try {
-                fft_thread.join();
+                stepper_thread.join();
             } catch (InterruptedException e) {
                 e.printStackTrace();
-                return;
+                handler.removeCallbacks(drawRunner);
             }
 
+            for(SLWallpaperEngine engine : showing) {
+                engine.bitmap_index = 1 - engine.bitmap_index;
+            }
+        }
 
-            rules.s_fast(field, n_buffer, m_buffer, dt);
+        private void draw_interpolated() {
+            long now = System.currentTimeMillis();
+            if(sim_thread != null && !sim_thread.isAlive()) {
+                // A new simulation frame is ready. Blend towards it from the last one.
+                join_sim_thread();
+                double tmp[] = prev_field;
+                prev_field = next_field;
+                next_field = tmp;
+                System.arraycopy(sim.field, 0, next_field, 0, next_field.length);
+                sim_interval = Math.max(now - next_field_time, 1);
+                next_field_time = now;
+                if(auto_quality && governor.add_sample(sim_nanos / 1e6)) {
+                    Log.d(TAG, "Quality governor moved to tier " + governor.tier() + ", scale " + governor.scale());
+                    reinit();
+                    return;
+                }
+            }
+            int sim_delay = frame_delay + (auto_quality ? governor.extra_delay() : 0);
+            if(sim_thread == null && now - sim_start_time >= sim_delay) {
+                sim_start_time = now;
+                sim_thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        long start = System.nanoTime();
+                        step();
+                        check_dead();
+                        sim_nanos = System.nanoTime() - start;
+                    }
+                });
+                sim_thread.start();
+            }
 
+            double alpha = Math.min((now - next_field_time) / (double)sim_interval, 1.0);
+            for(int i=0; i<blend_field.length; i++) {
+                blend_field[i] = prev_field[i] + alpha * (next_field[i] - prev_field[i]);
+            }
+            // Blended once, colored for every engine at its own size
+            for(SLWallpaperEngine engine : showing) {
+                engine.update_pixels(blend_field);
+                engine.present(engine.bitmap_index);
+                engine.bitmap_index = 1 - engine.bitmap_index;
+            }
         }
 
-        public void normalize(double arr[]) {
-            double min = arr[0];
-            double max = min;
-            for(int i=0; i<arr.length; i++) {
-                if(arr[i] < min) min = arr[i];
-                if(arr[i] > max) max = arr[i];
+        private void draw() {
+            showing.clear();
+            for(SLWallpaperEngine engine : engines) {
+                if(engine.is_showing()) {
+                    showing.add(engine);
+                }
             }
-            for(int i=0; i<arr.length; i++) {
-                arr[i] = (arr[i] - min) / (max - min);
+            if (!showing.isEmpty()) {
+                if(rebuild != null && rebuild.is_ready()) {
+                    join_sim_thread();
+                    swap(rebuild, rebuild_scale);
+                    rebuild = null;
+                }
+                long etime = System.currentTimeMillis();
+                long frame_start = System.nanoTime();
+                // Before anything is colored this frame
+                boolean recolor = palette.advance(etime);
+                if(contrast != null && (contrast.sample(current_field()) || recolor)) {
+                    colors = contrast.fold(palette.map());
+                    recolor = true;
+                }
+                if(recolor) {
+                    apply_colors();
+                }
+
+                if(interpolate) {
+                    draw_interpolated();
+                }
+                else {
+                    draw_stepped();
+                }
+
+                long frame_nanos = System.nanoTime() - frame_start;
+                stats.end_frame(frame_start, frame_nanos);
+                if(etime - last_checkpoint > CHECKPOINT_MILLIS) {
+                    // In interpolation mode the simulation may be mid-step, next_field is settled
+                    save_snapshot(interpolate ? next_field : sim.field);
+                }
+                if(!interpolate && auto_quality && governor.add_sample(frame_nanos / 1e6)) {
+                    // Between frames, so nothing is mid-step while we rebuild
+                    Log.d(TAG, "Quality governor moved to tier " + governor.tier() + ", scale " + governor.scale());
+                    reinit();
+                }
+                frame_millis_sum += System.currentTimeMillis() - etime;
+                if(frame_counter++ % 32 == 0) {
+                    long avg = frame_millis_sum / 32;
+                    long fps = avg>0L ? 1000 / avg : 0L;
+                    Log.d(TAG, "Avg time per frame: " + avg + ", fps: " + fps
+                            + ", engines shown: " + showing.size()
+                            + ", tiles recolored: " + (int)(100 * stats.recolored_fraction()) + "%"
+                            + (sim.is_adaptive() ? ", " + sim.dt_description() + " mean " + sim.mean_dt() : ""));
+                    frame_millis_sum = 0;
+                }
+
+
+            } else {
+                Log.d(TAG, "Invisible so not drawing");
+            }
+
+            handler.removeCallbacks(drawRunner);
+            if(!showing.isEmpty()) {
+//                Log.d(TAG, "Setting delay to " + frame_delay);
+                int delay = frame_delay + (auto_quality ? governor.extra_delay() : 0);
+                handler.postDelayed(drawRunner, interpolate ? INTERPOLATED_FRAME_DELAY : delay);
             }
+        }
+    }
 
+    /**
+     * One surface showing the shared simulation: its own size, launcher
+     * offsets, output stage, bitmaps and HUD.
+     */
+    private class SLWallpaperEngine extends Engine {
+        private boolean visible;
+        int width;
+        int height;
+        int last_width = 0;
+        int last_height = 0;
+        // The whole virtual wallpaper, which is simulated, and the part of
+        // it on screen, which is all that gets colored and uploaded
+        int actual_width;
+        int actual_height;
+        int surface_width;
+        int surface_height;
+        // Window of the grid the bitmaps hold, in cells
+        int view_width;
+        int view_height;
+        float x_offset = 0f;
+        float y_offset = 0f;
+        // Where in the grid each bitmap was colored from, in fractional cells
+        final double window_x[] = new double[2];
+        final double window_y[] = new double[2];
+        final Rect src_rect = new Rect();
+        final RectF dst_rect = new RectF();
+        int pixels[];
+        OutputStage output;
+        Paint paint;
+        Bitmap bitmap[];
+        // The frame packed for the bitmaps, null when pixels are set on them directly
+        PixelBuffer frame;
+        String last_format = null;
+        int bitmap_index = 0;
+        // Owns the bitmaps, recycled as soon as the grid changes
+        final ResourceArena bitmaps = new ResourceArena();
+        PerfHud hud = null;
+
+        /** Visible and attached to the shared simulation. */
+        boolean is_showing() {
+            return visible && output != null;
         }
 
-        private double sigmoid_tuneable(double x, int ik) {
-            double k = (ik - 50) / 50.1;
-            double offset = 0.0;
-            if(x > 0.5) {
-                x -= 0.5;
-                k *= -1.0;
-                offset = 0.5;
+        /** Match the pixel buffers and bitmaps to the part of the simulation's grid on screen. */
+        void update_grid(int width, int height) {
+            this.width = width;
+            this.height = height;
+            view_width = view_cells(width, surface_width, actual_width);
+            view_height = view_cells(height, surface_height, actual_height);
+            String format = shared.pixel_format;
+            if(last_width != view_width || last_height != view_height || !Objects.equals(last_format, format)) {
+                pixels = new int[view_width * view_height];
+                output = new OutputStage(view_width, view_height);
+                last_width = view_width;
+                last_height = view_height;
+                last_format = format;
+                // Between frames, so nothing is drawing from the old ones
+                bitmaps.release();
+                Bitmap.Config config = format != null && PixelBuffer.is_565(format)
+                        ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+                bitmap = new Bitmap[2];
+                bitmap[0] = own_bitmap(view_width, view_height, config);
+                bitmap[1] = own_bitmap(view_width, view_height, config);
+                frame = null;
+                if(format != null) {
+                    frame = own_frame(format, view_width, view_height);
+                }
+                src_rect.set(0, 0, view_width, view_height);
+                Log.d(TAG, "View " + view_width + " x " + view_height + " " + (format != null ? format : "set pixels")
+                        + ", bitmaps and buffer " + Pointer.formatBytes(bitmaps.bytes()));
             }
-            return (k*x - x) / (4*k*x - k - 1) + offset;
+        }
+
+        private Bitmap own_bitmap(int width, int height, Bitmap.Config config) {
+            final Bitmap b = Bitmap.createBitmap(width, height, config);
+            bitmaps.own(new ResourceArena.Resource() {
+                @Override
+                public long bytes() {
+                    return b.getAllocationByteCount();
+                }
+
+                @Override
+                public void release() {
+                    b.recycle();
+                }
+            });
+            return b;
+        }
+
+        private PixelBuffer own_frame(String format, int width, int height) {
+            final PixelBuffer b = new PixelBuffer(format, width, height);
+            bitmaps.own(new ResourceArena.Resource() {
+                @Override
+                public long bytes() {
+                    return b.bytes();
+                }
+
+                @Override
+                public void release() {
+                    // A direct buffer is freed by the GC, this just counts it
+                }
+            });
+            return b;
+        }
+
+        /** What {@link #update_grid} would allocate for a grid of this size. */
+        long view_bytes(int width, int height) {
+            return MemoryBudget.view_bytes(view_cells(width, surface_width, actual_width),
+                    view_cells(height, surface_height, actual_height), shared.pixel_format);
+        }
+
+        /** Cells covering the screen, plus one so the window can sit between cells while scrolling. */
+        private int view_cells(int cells, int surface, int actual) {
+            if(surface >= actual) {
+                return cells;
+            }
+            return (int)Math.ceil((double)surface * cells / actual) + 1;
+        }
+
+        /** Point the output stage at the part of the grid the launcher offsets put on screen. */
+        private void place_window() {
+            double x = x_offset * Math.max(actual_width - surface_width, 0) * width / (double)actual_width;
+            double y = y_offset * Math.max(actual_height - surface_height, 0) * height / (double)actual_height;
+            output.set_window(width, height, (int)Math.floor(x), (int)Math.floor(y));
+            window_x[bitmap_index] = x;
+            window_y[bitmap_index] = y;
         }
 
         @Override
@@ -585,31 +914,64 @@ public class SLWallpaperService extends WallpaperService {
             paint.setAntiAlias(true);
             paint.setFilterBitmap(true);
             paint.setDither(true);
-            actual_width = getDesiredMinimumWidth();
-            actual_height = getDesiredMinimumHeight();
-            Log.d(TAG, "Surface created " + width + " x " + height);
-            PreferenceManager.setDefaultValues(getApplicationContext(), R.xml.preferences, false);
-            prefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
-            prefs.registerOnSharedPreferenceChangeListener(this);
-            reinit(false);
-            draw();
+            Rect frame = holder.getSurfaceFrame();
+            set_sizes(frame.width(), frame.height());
+            Log.d(TAG, "Surface created " + surface_width + " x " + surface_height);
+            shared.attach(this);
+            shared.visibility_changed();
         }
 
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-            this.actual_width = width;
-            this.actual_height = height;
-            reinit(false);
+            set_sizes(width, height);
+            shared.reinit();
             Log.d(TAG, "Surface changed " + width + " x " + height);
         }
 
+        private void set_sizes(int width, int height) {
+            surface_width = width;
+            surface_height = height;
+            // Launchers that scroll the wallpaper ask for it to be wider than the screen
+            actual_width = Math.max(getDesiredMinimumWidth(), width);
+            actual_height = Math.max(getDesiredMinimumHeight(), height);
+        }
+
+        @Override
+        public void onOffsetsChanged(float xOffset, float yOffset, float xStep, float yStep, int xPixels, int yPixels) {
+            x_offset = xOffset;
+            y_offset = yOffset;
+            // Follow the launcher now rather than at the next step, the
+            // same frame just colored from a different window
+            redraw();
+        }
+
+        /** Color and show the current frame again, between steps. */
+        void redraw() {
+            if(is_showing()) {
+                double src[] = shared.current_field();
+                if(src != null) {
+                    update_pixels(src);
+                    present(bitmap_index);
+                    bitmap_index = 1 - bitmap_index;
+                }
+            }
+        }
+
         @Override
         public void onSurfaceDestroyed(SurfaceHolder holder) {
             Log.d(TAG, "Surface destroyed");
             super.onSurfaceDestroyed(holder);
             visible = false;
-            prefs.unregisterOnSharedPreferenceChangeListener(this);
-            delete_plans();
+            shared.detach(this);
+            // Everything gets rebuilt when the surface comes back
+            output = null;
+            pixels = null;
+            bitmap = null;
+            frame = null;
+            bitmaps.release();
+            last_width = 0;
+            last_height = 0;
+            shared.visibility_changed();
         }
 
         @Override
@@ -617,106 +979,61 @@ public class SLWallpaperService extends WallpaperService {
             this.visible = visible;
 
             Log.d(TAG, "Visibility changed to " + visible);
-            if(visible) {
-                add_speckles();
-                draw();
-            } else {
-                handler.removeCallbacks(drawRunner);
-            }
-        }
-
-        private void do_sigmoid_tuneable(double dest[], double src[], int color_scaling) {
-            for(int i=0; i<src.length; i++) {
-                dest[i] = sigmoid_tuneable(src[i], color_scaling);
-            }
+            shared.visibility_changed();
         }
 
-        private void do_cmap(int dest[], double src[]) {
-            for(int i=0; i<src.length; i++) {
-                dest[i] = cmap.get_fast(src[i]);
-            }
-        }
-
-        void step_and_update() {
-
-            step();
-            if(color_scaling == 50) {
-                do_cmap(pixels, field);
-            }
-            else {
-                double tmp[] = new double[width * height];
-                do_sigmoid_tuneable(tmp, field, color_scaling);
-                do_cmap(pixels, tmp);
-            }
-            bitmap[bitmap_index].setPixels(pixels, 0, width, 0, 0, width, height);
-
-            double sum = 0.0;
-            for(int i=0; i<width*height; i++) {
-                sum += field[i];
-            }
-//            Log.d(TAG, "Sum is: " + String.valueOf((int)sum));
-            if(sum < 10) {
-                Log.d(TAG, "Grid is dead. Reseeding");
-                add_speckles();
-            }
-            else if(sum < 900*inner_radius*inner_radius/49) {
-                // For an inner_radius of 7, a single glider has a sum around 800
-                // If we only have a single glider for a while, resize
-                dead_count ++;
-                if(dead_count > 100) {
-                    Log.d(TAG, "Single glider has been around too long");
-                    add_speckles();
+        private final OutputStage.SpanSink upload_sink = new OutputStage.SpanSink() {
+            @Override
+            public void span(int x, int y, int w, int h) {
+                if(frame != null) {
+                    frame.pack(pixels, x, y, w, h);
+                }
+                else {
+                    bitmap[bitmap_index].setPixels(pixels, y * view_width + x, view_width, x, y, w, h);
                 }
             }
+        };
 
+        void update_pixels(double src[]) {
+            FrameStats stats = shared.stats;
+            long ctime = System.nanoTime();
+            place_window();
+            int recolored = output.render(src, pixels);
+            long utime = System.nanoTime();
+            stats.add_stage(FrameStats.STAGE_COLOR, utime - ctime);
+            int uploaded = output.upload(bitmap_index, upload_sink);
+            if(frame != null && uploaded > 0) {
+                // The buffer always holds the whole latest frame, packed a
+                // span at a time, and goes over in one copy
+                bitmap[bitmap_index].copyPixelsFromBuffer(frame.buffer());
+            }
+            stats.add_stage(FrameStats.STAGE_UPLOAD, System.nanoTime() - utime);
+            stats.set_tiles(recolored, uploaded, output.tile_count());
         }
 
-        private void draw() {
-            if (visible) {
-                long etime = System.currentTimeMillis();
-
-                Thread stepper_thread = new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        step_and_update();
-                    }
-                });
-
-                stepper_thread.start();
-                SurfaceHolder holder = getSurfaceHolder();
-                Canvas canvas = holder.lockCanvas();
-
-
-                canvas.drawBitmap(bitmap[1 - bitmap_index], new Rect(0, 0, width, height), new Rect(0, 0, width*scale, height*scale), paint);
-                holder.unlockCanvasAndPost(canvas);
-
-                try {
-                    stepper_thread.join();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                    handler.removeCallbacks(drawRunner);
-                }
-
-                bitmap_index = 1 - bitmap_index;
-
-                frame_millis_sum += System.currentTimeMillis() - etime;
-                if(frame_counter++ % 32 == 0) {
-                    long avg = frame_millis_sum / 32;
-                    long fps = avg>0L ? 1000 / avg : 0L;
-                    Log.d(TAG, "Avg time per frame: " + avg + ", fps: " + fps);
-                    frame_millis_sum = 0;
+        void present(int index) {
+            long dtime = System.nanoTime();
+            SurfaceHolder holder = getSurfaceHolder();
+            Canvas canvas = holder.lockCanvas();
+
+            // The grid needn't divide the wallpaper evenly, so cells are
+            // stretched to fit, and the window is shifted by however far
+            // the launcher offset is past its first cell
+            double cell_w = (double)actual_width / width;
+            double cell_h = (double)actual_height / height;
+            float left = (float)(-(window_x[index] - Math.floor(window_x[index])) * cell_w);
+            float top = (float)(-(window_y[index] - Math.floor(window_y[index])) * cell_h);
+            dst_rect.set(left, top, left + (float)(view_width * cell_w), top + (float)(view_height * cell_h));
+            canvas.drawBitmap(bitmap[index], src_rect, dst_rect, paint);
+            if(shared.show_hud) {
+                if(hud == null) {
+                    hud = new PerfHud();
                 }
-
-
-            } else {
-                Log.d(TAG, "Invisible so not drawing");
-            }
-
-            handler.removeCallbacks(drawRunner);
-            if(visible) {
-//                Log.d(TAG, "Setting delay to " + frame_delay);
-                handler.postDelayed(drawRunner, frame_delay);
+                hud.update(shared.stats, width, height, shared.scale, shared.sim.description());
+                hud.draw(canvas);
             }
+            holder.unlockCanvasAndPost(canvas);
+            shared.stats.add_stage(FrameStats.STAGE_DRAW, System.nanoTime() - dtime);
         }
     }
 }
@@ -1,18 +1,31 @@
 package ninja.duck.smoothlife;
 
+import android.app.Activity;
 import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
+import android.provider.OpenableColumns;
 import android.util.Log;
 import android.widget.Toast;
 
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.preference.ListPreference;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.PreferenceManager;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class SettingsActivity extends AppCompatActivity {
     private static final String TAG = "SLPreferences";
+    private static final int PICK_PALETTE = 1;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -37,6 +50,8 @@ public class SettingsActivity extends AppCompatActivity {
             setPreferencesFromResource(R.xml.preferences, rootKey);
 
             addResetListener();
+            addPaletteListener();
+            listUserPalettes();
 
             Preference about_button = findPreference("about_page");
             about_button.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
@@ -63,6 +78,93 @@ public class SettingsActivity extends AppCompatActivity {
             });
         }
 
+        void addPaletteListener() {
+            Preference load_button = findPreference("load_palette");
+            load_button.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                @Override
+                public boolean onPreferenceClick(Preference preference) {
+                    Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                    intent.addCategory(Intent.CATEGORY_OPENABLE);
+                    intent.setType("*/*");
+                    intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"text/*", "application/json"});
+                    startActivityForResult(intent, PICK_PALETTE);
+                    return true;
+                }
+            });
+        }
+
+        /** Offer the palettes loaded so far alongside the built-in color maps. */
+        void listUserPalettes() {
+            List<String> names = new ArrayList<>();
+            File files[] = paletteDir().listFiles();
+            if(files != null) {
+                for(File file : files) {
+                    if(UserPalettes.is_palette(file.getName())) {
+                        names.add(UserPalettes.name_of(file.getName()));
+                    }
+                }
+            }
+            for(String key : new String[]{"color_map_choice", "palette_cycle_target"}) {
+                ListPreference list = findPreference(key);
+                List<String> entries = new ArrayList<>(Arrays.asList(getResources().getStringArray(R.array.ColorMapChoice)));
+                entries.addAll(names);
+                String array[] = entries.toArray(new String[0]);
+                list.setEntries(array);
+                list.setEntryValues(array);
+            }
+        }
+
+        File paletteDir() {
+            return new File(getActivity().getFilesDir(), "palettes");
+        }
+
+        @Override
+        public void onActivityResult(int requestCode, int resultCode, Intent data) {
+            super.onActivityResult(requestCode, resultCode, data);
+            if(requestCode != PICK_PALETTE || resultCode != Activity.RESULT_OK || data == null) {
+                return;
+            }
+            Uri uri = data.getData();
+            String file_name = displayName(uri);
+            if(file_name == null || !UserPalettes.is_palette(file_name)) {
+                Toast.makeText(getActivity(), "Palettes are .csv or .json files", Toast.LENGTH_LONG).show();
+                return;
+            }
+            try {
+                InputStream in = getActivity().getContentResolver().openInputStream(uri);
+                if(in == null) {
+                    throw new IOException("Could not open " + file_name);
+                }
+                ColorMap map;
+                try(InputStream src = in) {
+                    // Only replaces a palette of the same name if it compiles
+                    map = UserPalettes.install(src, paletteDir(), file_name);
+                }
+                listUserPalettes();
+                // Tells the wallpaper to load palettes again, before it looks the choice up
+                PreferenceManager.getDefaultSharedPreferences(getActivity()).edit()
+                        .putLong(SLWallpaperService.PALETTES_IMPORTED, System.currentTimeMillis()).apply();
+                ListPreference choice = findPreference("color_map_choice");
+                choice.setValue(map.getName());
+                Toast.makeText(getActivity(), "Loaded palette " + map.getName(), Toast.LENGTH_SHORT).show();
+            } catch (IOException | IllegalArgumentException e) {
+                Log.d(TAG, "Bad palette " + file_name, e);
+                Toast.makeText(getActivity(), "Bad palette " + file_name + ": " + e.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        }
+
+        private String displayName(Uri uri) {
+            Cursor cursor = getActivity().getContentResolver().query(uri, new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null);
+            if(cursor == null) {
+                return uri.getLastPathSegment();
+            }
+            try {
+                return cursor.moveToFirst() ? new File(cursor.getString(0)).getName() : null;
+            } finally {
+                cursor.close();
+            }
+        }
+
         // https://stackoverflow.com/a/24648780/2293508
         void resetSettings() {
             Log.d(TAG, "Resetting preferences");
@@ -75,6 +177,8 @@ public class SettingsActivity extends AppCompatActivity {
             Toast toast = Toast.makeText(getActivity(), "Reset all preferences", Toast.LENGTH_SHORT);
             toast.show();
             addResetListener();
+            addPaletteListener();
+            listUserPalettes();
         }
 
     }
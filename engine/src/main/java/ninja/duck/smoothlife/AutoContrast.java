@@ -0,0 +1,113 @@
+package ninja.duck.smoothlife;
+
+/**
+ * Spreads the field values actually in use over the whole colormap.
+ * <p>
+ * Keeps a coarse histogram of a strided sample of the field, smoothed over
+ * frames, and every {@link #UPDATE_FRAMES} frames turns it into a partial
+ * equalization curve: the cumulative histogram blended with a straight line
+ * by {@link #STRENGTH}, so crowded value ranges get more of the colors
+ * without the sparse ones vanishing. The curve is folded into the colormap's
+ * table, so coloring is the same single lookup per pixel and the per-frame
+ * cost is the sample. Only a noticeably different curve means recoloring.
+ */
+public class AutoContrast {
+    public static final int BINS = 64;
+    public static final int SAMPLES = 4096;
+    public static final int UPDATE_FRAMES = 16;
+    /** Weight of each new sample in the smoothed histogram. */
+    static final double DECAY = 0.1;
+    /** 1 is full equalization, 0 leaves the values alone. */
+    static final double STRENGTH = 0.5;
+    /** Smallest move of the curve worth recoloring for. */
+    static final double CHANGE = 1.0 / 256;
+
+    private final double hist[] = new double[BINS];
+    private final double counts[] = new double[BINS];
+    // Output value at each bin edge
+    private final double curve[] = new double[BINS + 1];
+    private final double next_curve[] = new double[BINS + 1];
+    private boolean primed = false;
+    private int frames = 0;
+
+    private ColorMap source = null;
+    private ColorMap folded = null;
+
+    public AutoContrast() {
+        for(int b=0; b<=BINS; b++) {
+            curve[b] = (double)b / BINS;
+        }
+    }
+
+    /**
+     * Add a strided sample of {@code field} to the histogram, and every
+     * {@link #UPDATE_FRAMES} calls update the curve from it.
+     *
+     * @return whether the curve moved enough that colors need folding again
+     */
+    public boolean sample(double field[]) {
+        int stride = Math.max(field.length / SAMPLES, 1);
+        for(int b=0; b<BINS; b++) {
+            counts[b] = 0;
+        }
+        int n = 0;
+        for(int i=0; i<field.length; i+=stride) {
+            counts[bin(field[i])]++;
+            n++;
+        }
+        double weight = primed ? DECAY : 1;
+        for(int b=0; b<BINS; b++) {
+            hist[b] += weight * (counts[b] / n - hist[b]);
+        }
+        primed = true;
+        if(++frames % UPDATE_FRAMES != 1) {
+            return false;
+        }
+        return update_curve();
+    }
+
+    /**
+     * {@code map} with the curve folded into its table, for coloring with.
+     * O(table size), so only call it when the curve or the map changed.
+     */
+    public ColorMap fold(ColorMap map) {
+        if(map != source) {
+            source = map;
+            folded = new ColorMap(map);
+        }
+        int size = ColorMap.LUT_SIZE;
+        int from[] = map.lut;
+        int lut[] = folded.lut;
+        for(int i=0; i<size; i++) {
+            double x = (double)i / (size - 1) * BINS;
+            int b = Math.min((int)x, BINS - 1);
+            double y = curve[b] + (x - b) * (curve[b + 1] - curve[b]);
+            lut[i + 1] = from[(int)(y * (size - 1) + 0.5) + 1];
+        }
+        return folded;
+    }
+
+    private boolean update_curve() {
+        double total = 0;
+        next_curve[0] = 0;
+        for(int b=0; b<BINS; b++) {
+            total += STRENGTH * hist[b] + (1 - STRENGTH) / BINS;
+            next_curve[b + 1] = total;
+        }
+        double moved = 0;
+        for(int b=0; b<=BINS; b++) {
+            next_curve[b] /= total;
+            moved = Math.max(moved, Math.abs(next_curve[b] - curve[b]));
+        }
+        if(moved < CHANGE) {
+            return false;
+        }
+        System.arraycopy(next_curve, 0, curve, 0, BINS + 1);
+        return true;
+    }
+
+    private static int bin(double v) {
+        // Clamping keeps NaN, which casts to bin 0
+        return Math.min((int)(Math.min(Math.max(v, 0.), 1.) * BINS), BINS - 1);
+    }
+}
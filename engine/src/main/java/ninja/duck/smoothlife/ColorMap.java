@@ -0,0 +1,312 @@
+package ninja.duck.smoothlife;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ninja.duck.smoothlife.ColorMap: Classical linear LUT, with support for non-applicable values (
+ * {@link Double#NaN}) and missing values.
+ * <p>
+ * Associate a color to a scalar number. The color is taken from a linear
+ * interpolation within a list of colors at specific positions between 0 and 1.
+ * Specific colors are returned for {@link Double#NaN} values and for missing
+ * values.
+ * <p>
+ * The built-in colormaps are registered by name from a packed resource, see
+ * {@link ColorMapPack}, and each is only built when first asked for.
+ *
+ * @author Jean-Yves Tinevez
+ *
+ * Originally from: https://github.com/tinevez/CircleSkinner/blob/master/src/main/java/net/imagej/circleskinner/util/ColorMap.java
+ * Edited by duck
+ */
+public class ColorMap
+{
+    final int[] colors;
+
+    final double[] alphas;
+
+    private final int nColors;
+
+    /** Samples over 0 to 1 in {@link #lut}. */
+    static final int LUT_SIZE = 1024;
+
+    /**
+     * The map sampled evenly at construction, after a leading slot for
+     * {@link Double#NaN}. Whatever the spacing of the alphas, a value is then
+     * one lookup away from its color.
+     */
+    final int[] lut;
+
+    final int missingColor;
+
+    final int notApplicableColor;
+
+    String name;
+
+    /** Fallback for unknown names. */
+    static final String DEFAULT = "jet";
+
+    // Names in the built-in pack, read on first use; maps built on first request
+    private static Map< String, ColorMapPack.Entry > registry = null;
+    private static final Map< String, ColorMap > colorMaps = new HashMap<>();
+    // Loaded from files, see UserPalettes
+    private static final Map< String, ColorMap > userMaps = new LinkedHashMap<>();
+
+    private static synchronized Map< String, ColorMapPack.Entry > registry()
+    {
+        if ( registry == null )
+        {
+            final Map< String, ColorMapPack.Entry > entries = new LinkedHashMap<>();
+            try ( InputStream in = ColorMapPack.open_built_in() )
+            {
+                for ( final ColorMapPack.Entry entry : ColorMapPack.read_index( in ) )
+                    entries.put( entry.name, entry );
+            }
+            catch ( final IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+            registry = entries;
+        }
+        return registry;
+    }
+
+    /**
+     * Returns the collection of names of colormaps available.
+     *
+     * @return the colormap names.
+     */
+    public static synchronized Collection< String > getColorMapNames()
+    {
+        final List< String > names = new ArrayList<>( registry().keySet() );
+        names.addAll( userMaps.keySet() );
+        return Collections.unmodifiableCollection( names );
+    }
+
+    /** Whether {@code name} is one of the built-in colormaps. */
+    public static boolean isBuiltIn( final String name )
+    {
+        return registry().containsKey( name.toLowerCase() );
+    }
+
+    /**
+     * Makes a colormap loaded from elsewhere available by its name, replacing
+     * an earlier one of the same name. Built-in names can't be replaced.
+     */
+    public static synchronized void register( final ColorMap map )
+    {
+        if ( isBuiltIn( map.name ) )
+            throw new IllegalArgumentException( "Colormap " + map.name + " is built in" );
+        userMaps.put( map.name.toLowerCase(), map );
+    }
+
+    /**
+     * Returns the colormap instance with the specified name, reading it from
+     * the built-in pack the first time, or a registered one. Defaults to the Jet colormap if the
+     * specified name is unknown.
+     *
+     * @param name
+     *            the colormap name.
+     * @return the colormap instance.
+     */
+    public static synchronized ColorMap getColorMap( final String name )
+    {
+        ColorMapPack.Entry entry = registry().get( name.toLowerCase() );
+        if ( entry == null )
+        {
+            final ColorMap user = userMaps.get( name.toLowerCase() );
+            if ( user != null )
+                return user;
+            entry = registry().get( DEFAULT );
+        }
+        ColorMap cm = colorMaps.get( entry.name );
+        if ( cm == null )
+        {
+            try ( InputStream in = ColorMapPack.open_built_in() )
+            {
+                cm = ColorMapPack.read( in, entry );
+            }
+            catch ( final IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+            colorMaps.put( entry.name, cm );
+        }
+        return cm;
+    }
+
+    /**
+     * Generates a colormap linearly interpolated from the specified color.
+     *
+     * @param colors
+     *            the color list. It must at least contains 1 element.
+     * @param alphas
+     *            the position of the colors in the linear scale. The array must
+     *            have the same size that of the color list. Values of this
+     *            array must be increasing from 0 to 1. The first value must be
+     *            0. The last value must be 1.
+     * @param notApplicableColor
+     *            the color to return when {@link #get(double)} is provided with
+     *            a {@link Double#isNaN()}.
+     * @param missingColor
+     *            the color marking missing values.
+     */
+    ColorMap( final String name, final int[] colors, final double[] alphas, final int missingColor, final int notApplicableColor )
+    {
+        this.name = name;
+        this.colors = colors;
+        this.alphas = alphas;
+        this.missingColor = missingColor;
+        this.notApplicableColor = notApplicableColor;
+        this.nColors = colors.length;
+        lut = new int[ LUT_SIZE + 1 ];
+        lut[ 0 ] = notApplicableColor;
+        for ( int i = 0; i < LUT_SIZE; i++ )
+            lut[ i + 1 ] = get( ( double ) i / ( LUT_SIZE - 1 ) );
+    }
+
+    /**
+     * A copy of {@code source} with its own {@link #lut}, for animating the
+     * table. Only {@link #get_fast(double)} and {@link #map} see changes to it.
+     */
+    ColorMap( final ColorMap source )
+    {
+        this.name = source.name;
+        this.colors = source.colors;
+        this.alphas = source.alphas;
+        this.missingColor = source.missingColor;
+        this.notApplicableColor = source.notApplicableColor;
+        this.nColors = source.nColors;
+        this.lut = source.lut.clone();
+    }
+
+    /**
+     * Returns the color associated with missing values.
+     *
+     * @return the missing value color.
+     */
+    public int getMissingColor()
+    {
+        return missingColor;
+    }
+
+    /**
+     * Returns this colormap name.
+     *
+     * @return the colormap name.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the color associated with the specified value in the range from 0
+     * to 1.
+     * <p>
+     * If {@code val} is {@link Double#NaN}, returns the non-applicable color.
+     * If {@code val} is lower than 0, returns the first color of the colormap.
+     * If {@code val} is higher than 1, returns the last color of the colormap.
+     * Otherwise, linearly interpolate from the colors in the colormap.
+     *
+     * @param val
+     *            the value.
+     * @return a color.
+     */
+    public int get( final double val )
+    {
+        if ( Double.isNaN( val ) )
+            return notApplicableColor;
+        if ( val <= 0. || nColors == 1 )
+            return colors[ 0 ];
+        if ( val >= 1. )
+            return colors[ nColors - 1 ];
+
+        int i = Arrays.binarySearch( alphas, val );
+        if ( i < 0 )
+            i = -( i + 1 );
+        else
+            return colors[ i ];
+
+        final double theta = ( val - alphas[ i - 1 ] ) / ( alphas[ i ] - alphas[ i - 1 ] );
+
+        final int c1 = colors[ i - 1 ];
+        final int r1 = (c1 >> 16) & 0xFF;
+        final int g1 = (c1 >> 8) & 0xFF;
+        final int b1 = (c1 >> 0) & 0xFF;
+        final int c2 = colors[ i ];
+        final int r2 = (c2 >> 16) & 0xFF;
+        final int g2 = (c2 >> 8) & 0xFF;
+        final int b2 = (c2 >> 0) & 0xFF;
+
+        final int r = ( int ) ( ( r2 - r1 ) * theta + r1 );
+        final int g = ( int ) ( ( g2 - g1 ) * theta + g1 );
+        final int b = ( int ) ( ( b2 - b1 ) * theta + b1 );
+
+        return (0xFF << 24) | ((r & 0xFF) << 16) | ((g & 0xFF) << 8) | ((b & 0xFF));
+    }
+
+    /**
+     * The color of {@code val} from the sampled table: the nearest of
+     * {@link #LUT_SIZE} evenly spaced colors rather than the exact
+     * interpolation of {@link #get(double)}.
+     */
+    public int get_fast( final double val )
+    {
+        return lut[ lut_index( val ) ];
+    }
+
+    /**
+     * Colors {@code src[off, off + len)} into {@code dst[off, off + len)}
+     * with one table lookup each, as {@link #get_fast(double)}.
+     */
+    public void map( final double[] src, final int[] dst, final int off, final int len )
+    {
+        map( src, off, dst, off, len );
+    }
+
+    /** {@link #map(double[], int[], int, int)} with separate offsets. */
+    public void map( final double[] src, final int srcOff, final int[] dst, final int dstOff, final int len )
+    {
+        final int[] lut = this.lut;
+        for ( int i = 0; i < len; i++ )
+            dst[ dstOff + i ] = lut[ lut_index( src[ srcOff + i ] ) ];
+    }
+
+    /** {@link #map(double[], int[], int, int)} for single precision values. */
+    public void map( final float[] src, final int[] dst, final int off, final int len )
+    {
+        map( src, off, dst, off, len );
+    }
+
+    /** {@link #map(float[], int[], int, int)} with separate offsets. */
+    public void map( final float[] src, final int srcOff, final int[] dst, final int dstOff, final int len )
+    {
+        final int[] lut = this.lut;
+        for ( int i = 0; i < len; i++ )
+            dst[ dstOff + i ] = lut[ lut_index( src[ srcOff + i ] ) ];
+    }
+
+    /**
+     * Index into {@link #lut}. Clamping keeps NaN, which then truncates to
+     * the NaN slot, so there are no branches on the value.
+     */
+    static int lut_index( final double val )
+    {
+        return ( int ) ( Math.min( Math.max( val, 0. ), 1. ) * ( LUT_SIZE - 1 ) + 1.5 );
+    }
+
+    public static int floats2color(float r, float g, float b) {
+        return (0xFF << 24) | (((int)(r*255) & 0xFF) << 16) | (((int)(g*255) & 0xFF) << 8) | (((int)(b*255) & 0xFF));
+    }
+}
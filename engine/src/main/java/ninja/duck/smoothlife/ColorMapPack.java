@@ -0,0 +1,175 @@
+package ninja.duck.smoothlife;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Colormaps packed as 8-bit RGB triples behind a small index of names.
+ * <p>
+ * The index says where each map's colors start, so a map can be read by
+ * streaming past the others without building them. Colors are evenly
+ * spaced over 0 to 1. The built-in maps are the {@link #BUILT_IN} resource
+ * next to this class, which keeps the tables out of the code. Compiled user
+ * palettes are cached in the same form.
+ */
+class ColorMapPack {
+    static final int MAGIC = 0x534c434d; // "SLCM"
+    static final int VERSION = 1;
+    static final String BUILT_IN = "colormaps.bin";
+
+    /** Where one map is in a pack. */
+    static class Entry {
+        final String name;
+        final int missing_color;
+        final int not_applicable_color;
+        final int count;
+        /** Offset of the colors from the start of the pack. */
+        final int offset;
+
+        Entry(String name, int missing_color, int not_applicable_color, int count, int offset) {
+            this.name = name;
+            this.missing_color = missing_color;
+            this.not_applicable_color = not_applicable_color;
+            this.count = count;
+            this.offset = offset;
+        }
+    }
+
+    /** The built-in pack, from the start. */
+    static InputStream open_built_in() throws IOException {
+        InputStream in = ColorMapPack.class.getResourceAsStream(BUILT_IN);
+        if(in == null) {
+            throw new IOException("Missing resource " + BUILT_IN);
+        }
+        return new BufferedInputStream(in);
+    }
+
+    /** The pack in {@code file}, memory-mapped rather than read. */
+    static InputStream open_mapped(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // The mapping stays valid once the file is closed
+            final ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte b[], int off, int len) {
+                    if(len == 0) {
+                        return 0;
+                    }
+                    if(!buf.hasRemaining()) {
+                        return -1;
+                    }
+                    len = Math.min(len, buf.remaining());
+                    buf.get(b, off, len);
+                    return len;
+                }
+
+                @Override
+                public long skip(long n) {
+                    int skipped = (int)Math.max(Math.min(n, buf.remaining()), 0);
+                    buf.position(buf.position() + skipped);
+                    return skipped;
+                }
+            };
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** The index of the pack {@code in} starts at, leaving it just after the index. */
+    static List<Entry> read_index(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if(data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a colormap pack");
+        }
+        int n = data.readInt();
+        List<Entry> entries = new ArrayList<>(n);
+        for(int i=0; i<n; i++) {
+            String name = data.readUTF();
+            entries.add(new Entry(name, data.readInt(), data.readInt(), data.readInt(), data.readInt()));
+        }
+        return entries;
+    }
+
+    /** Build {@code entry}'s map from the pack {@code in} starts at. */
+    static ColorMap read(InputStream in, Entry entry) throws IOException {
+        long skip = entry.offset;
+        while(skip > 0) {
+            long skipped = in.skip(skip);
+            if(skipped <= 0) {
+                if(in.read() < 0) {
+                    throw new EOFException("Colormap " + entry.name + " is past the end of the pack");
+                }
+                skipped = 1;
+            }
+            skip -= skipped;
+        }
+        byte rgb[] = new byte[entry.count * 3];
+        new DataInputStream(in).readFully(rgb);
+        int colors[] = new int[entry.count];
+        double alphas[] = new double[entry.count];
+        for(int i=0; i<entry.count; i++) {
+            colors[i] = 0xFF000000 | (rgb[3*i] & 0xFF) << 16 | (rgb[3*i + 1] & 0xFF) << 8 | (rgb[3*i + 2] & 0xFF);
+            alphas[i] = entry.count == 1 ? 0 : (double)i / (entry.count - 1);
+        }
+        return new ColorMap(entry.name, colors, alphas, entry.missing_color, entry.not_applicable_color);
+    }
+
+    /** Pack {@code maps}, which must have evenly spaced colors, in order. */
+    static void write(OutputStream out, List<ColorMap> maps) throws IOException {
+        // The index is the same size whatever the offsets are
+        int offset = index(maps, new int[maps.size()]).length;
+        int offsets[] = new int[maps.size()];
+        for(int i=0; i<maps.size(); i++) {
+            offsets[i] = offset;
+            offset += maps.get(i).colors.length * 3;
+        }
+        out.write(index(maps, offsets));
+        for(ColorMap map : maps) {
+            byte rgb[] = new byte[map.colors.length * 3];
+            for(int i=0; i<map.colors.length; i++) {
+                rgb[3*i] = (byte)(map.colors[i] >> 16);
+                rgb[3*i + 1] = (byte)(map.colors[i] >> 8);
+                rgb[3*i + 2] = (byte)map.colors[i];
+            }
+            out.write(rgb);
+        }
+        out.flush();
+    }
+
+    private static byte[] index(List<ColorMap> maps, int offsets[]) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(maps.size());
+        for(int i=0; i<maps.size(); i++) {
+            ColorMap map = maps.get(i);
+            data.writeUTF(map.name);
+            data.writeInt(map.missingColor);
+            data.writeInt(map.notApplicableColor);
+            data.writeInt(map.colors.length);
+            data.writeInt(offsets[i]);
+        }
+        data.flush();
+        return bytes.toByteArray();
+    }
+}
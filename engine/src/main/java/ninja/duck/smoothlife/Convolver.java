@@ -0,0 +1,371 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+import org.bytedeco.javacpp.DoublePointer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FFT plans, buffers and kernel spectra for convolving a field of one size.
+ * <p>
+ * Computes the inner disk (m) and outer annulus (n) neighbourhood fillings
+ * of a field with two forward/reverse FFT rounds sharing one forward
+ * transform.
+ * <p>
+ * Executing plans is thread safe but the FFTW planner is not, so making and
+ * destroying plans goes through {@link #planner}. Convolvers can then be
+ * built on a background thread while another one keeps running. A measured
+ * build can hold the planner for seconds, so destroying never waits for it:
+ * plans retired meanwhile are destroyed by the next thread to plan, see
+ * {@link #retire}.
+ * <p>
+ * In place, the transforms work on padded rows in one native buffer each
+ * way and the two reverse transforms run one after the other, so it needs
+ * two native buffers instead of six and one less scratch array, for a
+ * little copying and no second thread.
+ */
+public class Convolver {
+    static final ReentrantLock planner = new ReentrantLock();
+    // Plans left for whoever next holds the planner
+    static final ConcurrentLinkedQueue<fftw3.fftw_plan> retired = new ConcurrentLinkedQueue<>();
+
+    final int height;
+    final int width;
+    final int csize;
+    final boolean in_place;
+    double inner_r;
+    double outer_r;
+
+    fftw3.fftw_plan plan_forward;
+    fftw3.fftw_plan plan_reverse;
+    DoublePointer doublepointer_in_forward;
+    DoublePointer doublepointer_out_forward;
+    DoublePointer doublepointer_in_reverse_m;
+    DoublePointer doublepointer_out_reverse_m;
+    DoublePointer doublepointer_in_reverse_n;
+    DoublePointer doublepointer_out_reverse_n;
+
+    double M[];
+    double N[];
+
+    // Plan buffers, freed by destroy()
+    private final ResourceArena arena = new ResourceArena();
+
+    private final double field_[];
+    private final double m_buffer_[];
+    private final double n_buffer_[];
+
+    /**
+     * @param logres sharpness of the kernel edges. Windows cut out of a
+     *               bigger grid must pass the value of the full grid so the
+     *               kernels match.
+     * @param plan_flags FFTW planner flags, e.g. {@code FFTW_MEASURE}
+     */
+    public Convolver(int height, int width, double inner_r, double outer_r, double logres, int plan_flags) {
+        this(height, width, inner_r, outer_r, logres, plan_flags, false);
+    }
+
+    /** @param in_place use in-place transforms to save memory */
+    public Convolver(int height, int width, double inner_r, double outer_r, double logres, int plan_flags, boolean in_place) {
+        this.height = height;
+        this.width = width;
+        this.in_place = in_place;
+        this.inner_r = inner_r;
+        this.outer_r = outer_r;
+        csize = height * (width/2 + 1) * 2;
+
+        field_ = new double[csize];
+        m_buffer_ = new double[csize];
+        n_buffer_ = in_place ? null : new double[csize];
+
+        make_plans(plan_flags);
+        set_kernels(inner_r, outer_r, spectra(inner_r, outer_r, logres));
+    }
+
+    private Convolver(Convolver source, int plan_flags) {
+        height = source.height;
+        width = source.width;
+        csize = source.csize;
+        in_place = source.in_place;
+        field_ = new double[csize];
+        m_buffer_ = new double[csize];
+        n_buffer_ = in_place ? null : new double[csize];
+
+        make_plans(plan_flags);
+        set_kernels(source.inner_r, source.outer_r, new double[][]{source.M, source.N});
+    }
+
+    /**
+     * The same convolution with plans made with other flags. Kernels are
+     * shared, not recomputed. Safe while this convolver is in use.
+     */
+    public Convolver replan(int plan_flags) {
+        return new Convolver(this, plan_flags);
+    }
+
+    /**
+     * Best time of {@code rounds} forward plus reverse transforms with the
+     * plans of {@code a} and {@code b}, which must be the same size and
+     * both in place or both not.
+     * Alternates between the two on the same separate buffers so both see
+     * the same cache and load, and like {@link #spectra} can run while
+     * either convolver is in use.
+     *
+     * @return {a nanos, b nanos}
+     */
+    public static long[] race(Convolver a, Convolver b, int rounds) {
+        ResourceArena scratch = new ResourceArena();
+        try {
+            DoublePointer real = scratch.doubles(a.in_place ? a.csize : a.height * a.width);
+            DoublePointer complex = a.in_place ? real : scratch.doubles(a.csize);
+            real.put(new double[(int)real.capacity()]);
+            long best[] = {Long.MAX_VALUE, Long.MAX_VALUE};
+            Convolver both[] = {a, b};
+            for(int i=0; i<rounds; i++) {
+                for(int j=0; j<2; j++) {
+                    long start = System.nanoTime();
+                    fftw3.fftw_execute_dft_r2c(both[j].plan_forward, real, complex);
+                    fftw3.fftw_execute_dft_c2r(both[j].plan_reverse, complex, real);
+                    best[j] = Math.min(best[j], System.nanoTime() - start);
+                }
+            }
+            return best;
+        } finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Kernel spectra {M, N} for another pair of radii. Only executes the
+     * existing forward plan on separate buffers, so it can run on another
+     * thread while this convolver is in use.
+     */
+    public double[][] spectra(double inner_r, double outer_r, double logres) {
+        double m[] = new double[width * height];
+        double n[] = new double[width * height];
+        double inner_sum = logistic2d(m, inner_r, logres);
+        double annulus_sum = logistic2d(n, outer_r, logres) - inner_sum;
+        for(int i=0; i<width*height; i++) {
+            n[i] = (n[i] - m[i]) / annulus_sum;
+            m[i] = m[i] / inner_sum;
+        }
+
+        double spectra[][] = new double[2][csize];
+        ResourceArena scratch = new ResourceArena();
+        try {
+            // New arrays must be in place or not just like the plan's
+            DoublePointer in = scratch.doubles(in_place ? csize : height * width);
+            DoublePointer out = in_place ? in : scratch.doubles(csize);
+            for(int k=0; k<2; k++) {
+                double real[] = k == 0 ? m : n;
+                if(in_place) {
+                    pad(real, spectra[k]);
+                    in.put(spectra[k]);
+                }
+                else {
+                    in.put(real);
+                }
+                fftw3.fftw_execute_dft_r2c(plan_forward, in, out);
+                out.get(spectra[k]);
+            }
+        } finally {
+            scratch.release();
+        }
+        return spectra;
+    }
+
+    /** Switch to kernels from {@link #spectra}. Not while convolving. */
+    public void set_kernels(double inner_r, double outer_r, double spectra[][]) {
+        this.inner_r = inner_r;
+        this.outer_r = outer_r;
+        M = spectra[0];
+        N = spectra[1];
+    }
+
+    /**
+     * A convolver with estimated plans, or null rather than wait if another
+     * thread is making plans right now.
+     */
+    static Convolver try_estimated(int height, int width, double inner_r, double outer_r, double logres) {
+        if(!planner.tryLock()) {
+            return null;
+        }
+        try {
+            return new Convolver(height, width, inner_r, outer_r, logres, (int)fftw3.FFTW_ESTIMATE);
+        } finally {
+            planner.unlock();
+        }
+    }
+
+    /**
+     * Destroy {@code plans} now if the planner is free, otherwise leave them
+     * for the next thread that plans. Never blocks.
+     */
+    static void retire(fftw3.fftw_plan... plans) {
+        for(fftw3.fftw_plan plan : plans) {
+            retired.add(plan);
+        }
+        if(planner.tryLock()) {
+            try {
+                destroy_retired();
+            } finally {
+                planner.unlock();
+            }
+        }
+    }
+
+    /** Only with the planner held. */
+    private static void destroy_retired() {
+        fftw3.fftw_plan plan;
+        while((plan = retired.poll()) != null) {
+            fftw3.fftw_destroy_plan(plan);
+        }
+    }
+
+    /** Kernel edge sharpness for a full grid of the given size. */
+    public static double logres(int height, int width) {
+        return Math.log(Math.min(width, height)) / Math.log(2);
+    }
+
+    private void make_plans(int plan_flags) {
+        planner.lock();
+        try {
+            destroy_retired();
+            plan(plan_flags);
+        } finally {
+            planner.unlock();
+        }
+    }
+
+    private void plan(int plan_flags) {
+        if(in_place) {
+            doublepointer_in_forward = arena.doubles(csize);
+            doublepointer_out_forward = doublepointer_in_forward;
+            plan_forward = fftw3.fftw_plan_dft_r2c_2d(height, width, doublepointer_in_forward, doublepointer_out_forward, plan_flags);
+            doublepointer_in_reverse_m = arena.doubles(csize);
+            doublepointer_out_reverse_m = doublepointer_in_reverse_m;
+            plan_reverse = fftw3.fftw_plan_dft_c2r_2d(height, width, doublepointer_in_reverse_m, doublepointer_out_reverse_m, plan_flags);
+            return;
+        }
+        doublepointer_in_forward = arena.doubles(height * width);
+        doublepointer_out_forward = arena.doubles(csize);
+        plan_forward = fftw3.fftw_plan_dft_r2c_2d(height, width, doublepointer_in_forward, doublepointer_out_forward, plan_flags);
+
+        doublepointer_in_reverse_m = arena.doubles(csize);
+        doublepointer_out_reverse_m = arena.doubles(height * width);
+        doublepointer_in_reverse_n = arena.doubles(csize);
+        doublepointer_out_reverse_n = arena.doubles(height * width);
+        plan_reverse = fftw3.fftw_plan_dft_c2r_2d(height, width, doublepointer_in_reverse_m, doublepointer_out_reverse_m, plan_flags);
+    }
+
+    private double logistic2d(double grid[], double radius, double logres) {
+        double sum = 0;
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                double rr = ((r + height / 2) % height) - height / 2;
+                double cc = ((c + width / 2) % width) - width / 2;
+                double dist = Math.sqrt(rr * rr + cc * cc) - radius;
+                double logistic = 1.0f / (1.0f + Math.exp(logres * dist));
+                sum += logistic;
+                grid[r * width + c] = logistic;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Fill {@code n_buffer} and {@code m_buffer} with the annulus and disk
+     * neighbourhood averages of {@code field}.
+     */
+    public void convolve(double field[], final double n_buffer[], final double m_buffer[]) {
+        if(in_place) {
+            convolve_in_place(field, n_buffer, m_buffer);
+            return;
+        }
+        doublepointer_in_forward.put(field, 0, height * width);
+        fftw3.fftw_execute(plan_forward);
+        doublepointer_out_forward.get(field_);
+
+        final double norm = height * width;
+
+        // Doing the second FFT in a new thread is faster in the emulator
+        // But seemingly slightly slower IRL
+        Thread fft_thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                multiply(M, m_buffer_, norm);
+                doublepointer_in_reverse_m.put(m_buffer_);
+                fftw3.fftw_execute(plan_reverse);
+                doublepointer_out_reverse_m.get(m_buffer, 0, height * width);
+            }
+        });
+
+        fft_thread.start();
+
+        multiply(N, n_buffer_, norm);
+        doublepointer_in_reverse_n.put(n_buffer_);
+        fftw3.fftw_execute_dft_c2r(plan_reverse, doublepointer_in_reverse_n, doublepointer_out_reverse_n);
+        doublepointer_out_reverse_n.get(n_buffer, 0, height * width);
+
+        try {
+            fft_thread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void convolve_in_place(double field[], double n_buffer[], double m_buffer[]) {
+        pad(field, field_);
+        doublepointer_in_forward.put(field_);
+        fftw3.fftw_execute(plan_forward);
+        doublepointer_in_forward.get(field_);
+
+        final double norm = height * width;
+        reverse_in_place(M, m_buffer, norm);
+        reverse_in_place(N, n_buffer, norm);
+    }
+
+    private void reverse_in_place(double kernel[], double dest[], double norm) {
+        multiply(kernel, m_buffer_, norm);
+        doublepointer_in_reverse_m.put(m_buffer_);
+        fftw3.fftw_execute(plan_reverse);
+        doublepointer_in_reverse_m.get(m_buffer_);
+        int padded = (width/2 + 1) * 2;
+        for(int r=0; r<height; r++) {
+            System.arraycopy(m_buffer_, r * padded, dest, r * width, width);
+        }
+    }
+
+    /** Rows of {@code real} spaced out the way in-place real-to-complex transforms want them. */
+    private void pad(double real[], double padded[]) {
+        int stride = (width/2 + 1) * 2;
+        for(int r=0; r<height; r++) {
+            System.arraycopy(real, r * width, padded, r * stride, width);
+        }
+    }
+
+    private void multiply(double kernel[], double dest[], double norm) {
+        for(int i=0; i<csize; i+=2) {
+            double fr, fi, kr, ki;
+            fr = field_[i];
+            fi = field_[i + 1];
+            kr = kernel[i];
+            ki = kernel[i + 1];
+            dest[i] = (fr * kr - fi * ki) / norm;
+            dest[i + 1] = (fr * ki + fi * kr) / norm;
+        }
+    }
+
+    /** Free the buffers now and the plans as soon as the planner is free. Never blocks. */
+    public void destroy() {
+        if(plan_forward != null) {
+            retire(plan_forward, plan_reverse);
+            plan_forward = null;
+            plan_reverse = null;
+        }
+        // Nothing can execute on these any more. Plans don't own their
+        // arrays, so they can outlive them.
+        arena.release();
+    }
+}
@@ -0,0 +1,125 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+import org.bytedeco.javacpp.DoublePointer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Picks grid dimensions FFTW is fast at.
+ * <p>
+ * Dividing the screen by the scale gives arbitrary sizes, often with a large
+ * prime factor where FFTW falls back to much slower algorithms. Instead each
+ * dimension is moved to a nearby length with only 2, 3, 5 and 7 as factors
+ * and the blit stretches the grid back over the screen.
+ * <p>
+ * A 2D transform of h x w costs about h 1D transforms of length w plus w of
+ * length h, so the cost per cell splits into one term per dimension. Each
+ * dimension is chosen on its own from measured 1D transform times, which
+ * are cheap to take and cached for the life of the process.
+ */
+public class FftSizes {
+    /** How far a dimension may move from the requested size. */
+    static final double TOLERANCE = 0.06;
+    /** Candidates this close to the cheapest per cell count as just as fast, the nearest of them wins. */
+    static final double SLACK = 0.1;
+    static final int ROUNDS = 5;
+    static final int BATCH = 16;
+
+    private static final Map<Integer, Long> cost_cache = new HashMap<>();
+
+    /** Whether {@code n} has no prime factors above 7. */
+    public static boolean is_smooth(int n) {
+        if(n < 1) return false;
+        for(int p : new int[]{2, 3, 5, 7}) {
+            while(n % p == 0) {
+                n /= p;
+            }
+        }
+        return n == 1;
+    }
+
+    /** The smooth length nearest {@code n}, preferring the smaller on a tie. Just arithmetic, nothing measured. */
+    public static int nearest(int n) {
+        for(int d=0; ; d++) {
+            if(is_smooth(n - d)) return n - d;
+            if(is_smooth(n + d)) return n + d;
+        }
+    }
+
+    /**
+     * The fastest smooth length per cell within {@link #TOLERANCE} of
+     * {@code n}, measuring any lengths not timed yet. Measuring needs the
+     * planner, so while a background build holds it this falls back to
+     * {@link #nearest} rather than wait.
+     */
+    public static int fit(int n) {
+        int lo = Math.max(1, (int)Math.floor(n * (1 - TOLERANCE)));
+        int hi = (int)Math.ceil(n * (1 + TOLERANCE));
+        int count = 0;
+        int lengths[] = new int[hi - lo + 1];
+        double per_cell[] = new double[hi - lo + 1];
+        double best = Double.MAX_VALUE;
+        for(int len=lo; len<=hi; len++) {
+            if(!is_smooth(len)) continue;
+            long nanos = cost(len);
+            if(nanos < 0) {
+                return nearest(n);
+            }
+            lengths[count] = len;
+            per_cell[count] = (double)nanos / len;
+            best = Math.min(best, per_cell[count]);
+            count++;
+        }
+        if(count == 0) {
+            return nearest(n);
+        }
+        int choice = -1;
+        for(int i=0; i<count; i++) {
+            if(per_cell[i] > best * (1 + SLACK)) continue;
+            if(choice < 0 || Math.abs(lengths[i] - n) < Math.abs(choice - n)) {
+                choice = lengths[i];
+            }
+        }
+        return choice;
+    }
+
+    /**
+     * Best nanoseconds for one real-to-complex transform of length
+     * {@code n}, or -1 if it isn't cached and the planner is busy.
+     */
+    static long cost(int n) {
+        synchronized(cost_cache) {
+            Long cached = cost_cache.get(n);
+            if(cached != null) return cached;
+        }
+        if(!Convolver.planner.tryLock()) {
+            return -1;
+        }
+        ResourceArena scratch = new ResourceArena();
+        DoublePointer in = scratch.doubles(n);
+        DoublePointer out = scratch.doubles((n/2 + 1) * 2);
+        in.put(new double[n]);
+        fftw3.fftw_plan plan;
+        try {
+            plan = fftw3.fftw_plan_dft_r2c_1d(n, in, out, (int)fftw3.FFTW_ESTIMATE);
+        } finally {
+            Convolver.planner.unlock();
+        }
+        long best = Long.MAX_VALUE;
+        for(int r=0; r<ROUNDS; r++) {
+            long start = System.nanoTime();
+            for(int b=0; b<BATCH; b++) {
+                fftw3.fftw_execute(plan);
+            }
+            best = Math.min(best, Math.max((System.nanoTime() - start) / BATCH, 1));
+        }
+        scratch.release();
+        Convolver.retire(plan);
+        synchronized(cost_cache) {
+            cost_cache.put(n, best);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,162 @@
+package ninja.duck.smoothlife;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Rolling frame timing statistics for the wallpaper.
+ * <p>
+ * Keeps the last {@link #WINDOW} frame times plus a per-stage breakdown so
+ * the HUD (and anything else) can ask for fps and percentiles without
+ * scraping logcat. All times are in nanoseconds internally and reported in
+ * milliseconds.
+ */
+public class FrameStats {
+    public static final int WINDOW = 128;
+
+    public static final int STAGE_FFT = 0;
+    public static final int STAGE_RULES = 1;
+    public static final int STAGE_COLOR = 2;
+    public static final int STAGE_UPLOAD = 3;
+    public static final int STAGE_DRAW = 4;
+    public static final String[] STAGE_NAMES = {"fft", "rules", "color", "upload", "draw"};
+
+    private final long frame_nanos[] = new long[WINDOW];
+    private final long frame_starts[] = new long[WINDOW];
+    private final long stage_nanos[][] = new long[STAGE_NAMES.length][WINDOW];
+    private final long current_stage[] = new long[STAGE_NAMES.length];
+    private final long sorted[] = new long[WINDOW];
+    private final int tiles_recolored[] = new int[WINDOW];
+    private final int tiles_uploaded[] = new int[WINDOW];
+    private int current_recolored = 0;
+    private int current_uploaded = 0;
+    private int tile_total = 0;
+    private int index = 0;
+    private int count = 0;
+    private long plan_nanos = 0;
+    private long plan_old_nanos = 0;
+    private long plan_new_nanos = 0;
+    private boolean plan_kept = false;
+
+    public synchronized void reset() {
+        index = 0;
+        count = 0;
+        Arrays.fill(current_stage, 0);
+    }
+
+    /** Accumulate time spent in a stage for the frame currently in progress. */
+    public synchronized void add_stage(int stage, long nanos) {
+        current_stage[stage] += nanos;
+    }
+
+    /** Record how many output tiles the frame in progress recolored and uploaded. */
+    public synchronized void set_tiles(int recolored, int uploaded, int total) {
+        current_recolored = recolored;
+        current_uploaded = uploaded;
+        tile_total = total;
+    }
+
+    /** Close out a frame that started at {@code start_nanos} and took {@code nanos}. */
+    public synchronized void end_frame(long start_nanos, long nanos) {
+        frame_nanos[index] = nanos;
+        frame_starts[index] = start_nanos;
+        tiles_recolored[index] = current_recolored;
+        tiles_uploaded[index] = current_uploaded;
+        for(int s=0; s<current_stage.length; s++) {
+            stage_nanos[s][index] = current_stage[s];
+            current_stage[s] = 0;
+        }
+        index = (index + 1) % WINDOW;
+        if(count < WINDOW) count++;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /** Frames per second actually shown, including any frame delay. */
+    public double fps() {
+        if(count < 2) return 0.0;
+        int newest = (index - 1 + WINDOW) % WINDOW;
+        int oldest = (index - count + WINDOW) % WINDOW;
+        long span = frame_starts[newest] - frame_starts[oldest];
+        return span > 0 ? (count - 1) * 1e9 / span : 0.0;
+    }
+
+    /** Frame time percentile in ms, {@code p} in [0, 1]. */
+    public double percentile_ms(double p) {
+        if(count == 0) return 0.0;
+        for(int i=0; i<count; i++) {
+            sorted[i] = frame_nanos[(index - 1 - i + WINDOW) % WINDOW];
+        }
+        Arrays.sort(sorted, 0, count);
+        int k = (int)Math.ceil(p * count) - 1;
+        if(k < 0) k = 0;
+        if(k >= count) k = count - 1;
+        return sorted[k] / 1e6;
+    }
+
+    public double mean_ms() {
+        if(count == 0) return 0.0;
+        long sum = 0;
+        for(int i=0; i<count; i++) {
+            sum += frame_nanos[(index - 1 - i + WINDOW) % WINDOW];
+        }
+        return sum / 1e6 / count;
+    }
+
+    public double stage_mean_ms(int stage) {
+        if(count == 0) return 0.0;
+        long sum = 0;
+        for(int i=0; i<count; i++) {
+            sum += stage_nanos[stage][(index - 1 - i + WINDOW) % WINDOW];
+        }
+        return sum / 1e6 / count;
+    }
+
+    public int tile_total() {
+        return tile_total;
+    }
+
+    /** Mean fraction of output tiles recolored per frame. */
+    public double recolored_fraction() {
+        return tile_fraction(tiles_recolored);
+    }
+
+    /** Mean fraction of output tiles uploaded per frame. */
+    public double uploaded_fraction() {
+        return tile_fraction(tiles_uploaded);
+    }
+
+    private double tile_fraction(int tiles[]) {
+        if(count == 0 || tile_total == 0) return 0.0;
+        long sum = 0;
+        for(int i=0; i<count; i++) {
+            sum += tiles[(index - 1 - i + WINDOW) % WINDOW];
+        }
+        return (double)sum / count / tile_total;
+    }
+
+    /**
+     * Record the latest planning: how long it took and, for a plan upgrade,
+     * the A/B transform times and whether the new plans were kept. Not
+     * cleared by {@link #reset()}.
+     */
+    public void set_planning(long plan_nanos, long old_nanos, long new_nanos, boolean kept) {
+        this.plan_nanos = plan_nanos;
+        plan_old_nanos = old_nanos;
+        plan_new_nanos = new_nanos;
+        plan_kept = kept;
+    }
+
+    /** Planning time and gain, or "" if nothing has been planned in the background. */
+    public String planning_description() {
+        if(plan_nanos == 0) return "";
+        String s = String.format(Locale.US, "planned %.0f ms", plan_nanos / 1e6);
+        if(plan_old_nanos > 0) {
+            s += String.format(Locale.US, "  fft %.2f -> %.2f ms %s", plan_old_nanos / 1e6, plan_new_nanos / 1e6,
+                    plan_kept ? "kept" : "dropped");
+        }
+        return s;
+    }
+}
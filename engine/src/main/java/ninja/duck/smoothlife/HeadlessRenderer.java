@@ -0,0 +1,508 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Runs the simulation without a device and streams the frames out, for
+ * previews, tuning and throughput numbers from a plain JVM.
+ * <p>
+ * Options are named after the wallpaper preferences. Frames are handed to a
+ * writer thread through a fixed pool of {@link #POOL_SIZE} buffers, so memory
+ * stays bounded however many steps are run; when the writer falls behind the
+ * simulation waits for a free buffer and that wait is reported. Per-stage
+ * timings go to stderr at the end, so frames can go to stdout.
+ * <pre>
+ * smoothlife --steps 600 --smooth_timestepping --format y4m --output out.y4m
+ * smoothlife --format rgb | ffplay -f rawvideo -pixel_format rgb24 -video_size 270x480 -
+ * smoothlife --format png --output frames/%05d.png
+ * </pre>
+ */
+public class HeadlessRenderer {
+    static final int POOL_SIZE = 4;
+    static final String FORMAT_RGB = "rgb";
+    static final String FORMAT_Y4M = "y4m";
+    static final String FORMAT_PNG = "png";
+
+    static final String[] STAGE_NAMES = {"fft", "rules", "color", "wait", "write", "pack"};
+    static final int STAGE_FFT = 0;
+    static final int STAGE_RULES = 1;
+    static final int STAGE_COLOR = 2;
+    static final int STAGE_WAIT = 3;
+    static final int STAGE_WRITE = 4;
+    static final int STAGE_PACK = 5;
+
+    private static final String[] FLAGS = {"smooth_timestepping", "adaptive_timestep", "fft_friendly", "low_memory", "auto_contrast"};
+    private static final String USAGE =
+            "Usage: smoothlife [options]\n"
+            + "  --width N               screen width in pixels (1080)\n"
+            + "  --height N              screen height in pixels (1920)\n"
+            + "  --scale N               pixels per cell (4)\n"
+            + "  --fft_friendly          nudge the grid to a size the FFT is fast at, frames come out that size\n"
+            + "  --inner_radius N        inner radius in cells (7)\n"
+            + "  --smooth_timestepping   smooth instead of discrete timestepping\n"
+            + "  --timestep DT           smooth timestep (0.2)\n"
+            + "  --integrator NAME       euler, heun, rk4, exponential, semi_implicit (euler)\n"
+            + "  --adaptive_timestep     adapt the smooth timestep to the error\n"
+            + "  --color_map_choice NAME color map (viridis, or the --palette one)\n"
+            + "  --palette FILE          load a CSV or JSON palette file, see UserPalettes\n"
+            + "  --color_scaling N       0-100, 50 is linear (50)\n"
+            + "  --auto_contrast         spread the values in use over the color map, instead of --color_scaling\n"
+            + "  --palette_cycle MODE    off, rotate, or morph towards --palette_target (off)\n"
+            + "  --palette_target NAME   color map morphing blends with (magma)\n"
+            + "  --palette_period S      seconds of video per color cycle (60)\n"
+            + "  --steps N               steps to run (300)\n"
+            + "  --every N               write every Nth step (1)\n"
+            + "  --seed_pattern NAME     speckles, glider, gliders, noise (speckles)\n"
+            + "  --seed N                random seed, the same seed gives the same run\n"
+            + "  --plan MODE             FFTW planning: estimate, measure, patient, or progressive\n"
+            + "                          to start estimated and upgrade to measured while running (measure)\n"
+            + "  --low_memory            in-place transforms with fewer buffers\n"
+            + "  --format rgb|y4m|png    output format (rgb)\n"
+            + "  --fps N                 frame rate in the y4m header (30)\n"
+            + "  --pixel_format F        also pack each frame as the wallpaper would, to time it:\n"
+            + "                          argb_8888, rgb_565 or rgb_565_dither\n"
+            + "  --output PATH           file, - for stdout, or a %d pattern for png (-)\n"
+            + "  --no_output             just step and time, write nothing\n"
+            + "  --help\n";
+
+    /** Receives finished frames on the writer thread. */
+    interface FrameWriter {
+        void write(int argb[]) throws IOException;
+        void close() throws IOException;
+    }
+
+    public static void main(String args[]) {
+        Map<String, String> opts;
+        try {
+            opts = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+        if(opts.containsKey("help")) {
+            System.err.print(USAGE);
+            return;
+        }
+        try {
+            new HeadlessRenderer(opts).run();
+        } catch (IOException e) {
+            System.err.println("Writing frames failed: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    static Map<String, String> parse(String args[]) {
+        Map<String, String> opts = new HashMap<>();
+        for(int i=0; i<args.length; i++) {
+            if(!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if(!key.equals("help") && !USAGE.contains("--" + key + " ")) {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            boolean flag = key.equals("help") || key.equals("no_output");
+            for(String f : FLAGS) {
+                flag |= f.equals(key);
+            }
+            if(flag) {
+                opts.put(key, "true");
+            }
+            else if(i + 1 < args.length) {
+                opts.put(key, args[++i]);
+            }
+            else {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+        }
+        return opts;
+    }
+
+    final Map<String, String> opts;
+    final long stage_nanos[] = new long[STAGE_NAMES.length];
+
+    private final BlockingQueue<int[]> free = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<int[]> ready = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+    private static final int END[] = new int[0];
+    private volatile IOException write_error = null;
+    // The progressive plan upgrade once swapped in, for the report
+    private Simulation.Rebuild planning = null;
+    private int upgrade_step = 0;
+    private PixelBuffer packer = null;
+
+    HeadlessRenderer(Map<String, String> opts) {
+        this.opts = opts;
+    }
+
+    private String get(String key, String def) {
+        String val = opts.get(key);
+        return val == null ? def : val;
+    }
+
+    private int get_int(String key, int def) {
+        try {
+            return Integer.parseInt(get(key, String.valueOf(def)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number for --" + key);
+        }
+    }
+
+    void run() throws IOException {
+        int scale = Math.max(get_int("scale", 4), 1);
+        Simulation.Config config = new Simulation.Config();
+        config.width = get_int("width", 1080) / scale;
+        config.height = get_int("height", 1920) / scale;
+        if(opts.containsKey("fft_friendly")) {
+            config.width = FftSizes.fit(config.width);
+            config.height = FftSizes.fit(config.height);
+        }
+        config.inner_radius = get_int("inner_radius", 7);
+        if(opts.containsKey("smooth_timestepping")) {
+            config.dt = Double.parseDouble(get("timestep", "0.2"));
+        }
+        config.integrator = get("integrator", Integrator.EULER);
+        config.adaptive = opts.containsKey("adaptive_timestep");
+        config.pattern = get("seed_pattern", SeedPattern.SPECKLES);
+        String plan = get("plan", "measure");
+        boolean progressive = "progressive".equals(plan);
+        config.plan_flags = plan_flags(progressive ? "measure" : plan);
+        config.low_memory = opts.containsKey("low_memory");
+        int width = config.width;
+        int height = config.height;
+        int steps = get_int("steps", 300);
+        int every = Math.max(get_int("every", 1), 1);
+        String default_map = "viridis";
+        if(opts.containsKey("palette")) {
+            ColorMap user = UserPalettes.compile(new File(get("palette", "")));
+            ColorMap.register(user);
+            default_map = user.getName();
+        }
+        ColorMap cmap = ColorMap.getColorMap(get("color_map_choice", default_map));
+        int color_scaling = get_int("color_scaling", 50);
+        PaletteCycle palette = new PaletteCycle(get("palette_cycle", PaletteCycle.OFF), cmap,
+                ColorMap.getColorMap(get("palette_target", "magma")), Double.parseDouble(get("palette_period", "60")));
+        int fps = Math.max(get_int("fps", 30), 1);
+        AutoContrast contrast = opts.containsKey("auto_contrast") ? new AutoContrast() : null;
+        if(contrast != null) {
+            color_scaling = 50;
+        }
+        ColorMap colors = palette.map();
+        if(width <= 2 * 3 * config.inner_radius || height <= 2 * 3 * config.inner_radius) {
+            throw new IllegalArgumentException("Grid " + width + "x" + height + " is too small for inner_radius " + config.inner_radius);
+        }
+
+        long setup_start = System.nanoTime();
+        fftw3.fftw_set_timelimit(2.0);
+        Simulation sim;
+        Simulation.Rebuild upgrade = null;
+        if(progressive) {
+            Simulation.Config quick = config.copy();
+            quick.plan_flags = (int)fftw3.FFTW_ESTIMATE;
+            sim = new Simulation(quick);
+            upgrade = sim.prepare(config);
+            Thread t = new Thread(upgrade, "PlanUpgrade");
+            t.setDaemon(true);
+            t.start();
+        }
+        else {
+            sim = new Simulation(config);
+        }
+        if(opts.containsKey("seed")) {
+            sim.set_seed(Long.parseLong(opts.get("seed")));
+        }
+        sim.reseed();
+        long setup_nanos = System.nanoTime() - setup_start;
+
+        FrameWriter writer = opts.containsKey("no_output") ? null : open_writer(width, height);
+        OutputStage output = new OutputStage(width, height);
+        output.set_colors(colors, color_scaling);
+        final int pixels[] = new int[width * height];
+        if(opts.containsKey("pixel_format")) {
+            packer = new PixelBuffer(opts.get("pixel_format"), width, height);
+        }
+        OutputStage.SpanSink pack_sink = new OutputStage.SpanSink() {
+            @Override
+            public void span(int x, int y, int w, int h) {
+                packer.pack(pixels, x, y, w, h);
+            }
+        };
+        Thread writer_thread = null;
+        if(writer != null) {
+            for(int i=0; i<POOL_SIZE; i++) {
+                free.add(new int[width * height]);
+            }
+            writer_thread = start_writer(writer);
+        }
+
+        int frames = 0;
+        int reseeds = 0;
+        long run_start = System.nanoTime();
+        try {
+            for(int i=0; i<steps && write_error == null; i++) {
+                if(upgrade != null && upgrade.is_ready()) {
+                    sim.apply(upgrade);
+                    upgrade_step = i;
+                    planning = upgrade;
+                    upgrade = null;
+                }
+                sim.step();
+                stage_nanos[STAGE_FFT] += sim.step_fft_nanos();
+                stage_nanos[STAGE_RULES] += sim.step_nanos() - sim.step_fft_nanos();
+                if(sim.check_dead() != Simulation.RESEED_NONE) {
+                    reseeds++;
+                }
+                if(writer == null || i % every != 0) {
+                    continue;
+                }
+                long ctime = System.nanoTime();
+                // Cycle by video time, not wall time
+                boolean recolor = palette.advance(frames * 1000L / fps);
+                if(contrast != null && (contrast.sample(sim.field) || recolor)) {
+                    colors = contrast.fold(palette.map());
+                    recolor = true;
+                }
+                if(recolor) {
+                    output.set_colors(colors, color_scaling);
+                }
+                // Only changed tiles are recolored, so pixels stays current between frames
+                output.render(sim.field, pixels);
+                long wtime = System.nanoTime();
+                stage_nanos[STAGE_COLOR] += wtime - ctime;
+                if(packer != null) {
+                    output.upload(0, pack_sink);
+                    long ptime = System.nanoTime();
+                    stage_nanos[STAGE_PACK] += ptime - wtime;
+                    wtime = ptime;
+                }
+                int frame[] = free.take();
+                long btime = System.nanoTime();
+                stage_nanos[STAGE_WAIT] += btime - wtime;
+                System.arraycopy(pixels, 0, frame, 0, pixels.length);
+                stage_nanos[STAGE_COLOR] += System.nanoTime() - btime;
+                ready.put(frame);
+                frames++;
+            }
+            if(writer_thread != null) {
+                ready.put(END);
+                writer_thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if(upgrade != null) {
+                // Never finished, don't leave it borrowing the plans
+                upgrade.cancel();
+                upgrade.await();
+            }
+            sim.destroy();
+        }
+        long run_nanos = System.nanoTime() - run_start;
+        if(write_error != null) {
+            throw write_error;
+        }
+        report(sim, steps, frames, reseeds, setup_nanos, run_nanos);
+    }
+
+    private Thread start_writer(final FrameWriter writer) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while(true) {
+                        int frame[] = ready.take();
+                        if(frame == END) {
+                            break;
+                        }
+                        long start = System.nanoTime();
+                        if(write_error == null) {
+                            try {
+                                writer.write(frame);
+                            } catch (IOException e) {
+                                write_error = e;
+                            }
+                        }
+                        stage_nanos[STAGE_WRITE] += System.nanoTime() - start;
+                        free.put(frame);
+                    }
+                    writer.close();
+                } catch (IOException e) {
+                    if(write_error == null) {
+                        write_error = e;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "FrameWriter");
+        t.start();
+        return t;
+    }
+
+    private static int plan_flags(String plan) {
+        if("estimate".equals(plan)) return (int)fftw3.FFTW_ESTIMATE;
+        if("measure".equals(plan)) return (int)fftw3.FFTW_MEASURE;
+        if("patient".equals(plan)) return (int)fftw3.FFTW_PATIENT;
+        throw new IllegalArgumentException("Unknown plan " + plan);
+    }
+
+    private FrameWriter open_writer(int width, int height) throws IOException {
+        String format = get("format", FORMAT_RGB);
+        String path = get("output", FORMAT_PNG.equals(format) ? "frame%05d.png" : "-");
+        if(FORMAT_PNG.equals(format)) {
+            if(!path.contains("%")) {
+                throw new IllegalArgumentException("PNG output needs a %d pattern, e.g. frames/%05d.png");
+            }
+            return new PngWriter(width, height, path);
+        }
+        OutputStream out = "-".equals(path)
+                ? new FileOutputStream(FileDescriptor.out)
+                : new FileOutputStream(path);
+        out = new BufferedOutputStream(out, 1 << 16);
+        if(FORMAT_RGB.equals(format)) {
+            return new RgbWriter(width, height, out);
+        }
+        if(FORMAT_Y4M.equals(format)) {
+            return new Y4mWriter(width, height, get_int("fps", 30), out);
+        }
+        out.close();
+        throw new IllegalArgumentException("Unknown format " + format);
+    }
+
+    private void report(Simulation sim, int steps, int frames, int reseeds, long setup_nanos, long run_nanos) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "grid %dx%d, %s%n", sim.width, sim.height, sim.description()));
+        sb.append(String.format(Locale.US, "setup %.1f ms (plans and rules)%n", setup_nanos / 1e6));
+        Simulation.Config config = sim.config();
+        sb.append(String.format(Locale.US, "memory about %.1f MB estimated%s%n",
+                MemoryBudget.simulation_bytes(config) / (1024.0 * 1024.0), config.low_memory ? ", low memory" : ""));
+        if(packer != null) {
+            sb.append(String.format(Locale.US, "pixel buffer %s, %.1f KB%n", packer.format, packer.bytes() / 1024.0));
+        }
+        if(planning != null) {
+            sb.append(String.format(Locale.US, "plan upgrade: %.1f ms planning, fft %.3f -> %.3f ms, %s at step %d%n",
+                    planning.plan_nanos() / 1e6, planning.old_nanos() / 1e6, planning.new_nanos() / 1e6,
+                    planning.upgraded() ? "swapped in" : "not faster, dropped", upgrade_step));
+        }
+        sb.append(String.format(Locale.US, "%d steps, %d frames written, %d reseeds in %.2f s: %.1f steps/s%n",
+                steps, frames, reseeds, run_nanos / 1e9, steps * 1e9 / Math.max(run_nanos, 1)));
+        sb.append(String.format(Locale.US, "%-6s %10s %12s%n", "stage", "total ms", "ms per step"));
+        for(int s=0; s<STAGE_NAMES.length; s++) {
+            sb.append(String.format(Locale.US, "%-6s %10.1f %12.3f%n", STAGE_NAMES[s],
+                    stage_nanos[s] / 1e6, stage_nanos[s] / 1e6 / Math.max(steps, 1)));
+        }
+        sb.append("(write runs on its own thread, wait is the simulation blocked on it)\n");
+        System.err.print(sb);
+    }
+
+    /** Packed 8-bit RGB, no header, for piping into ffmpeg or ffplay. */
+    static class RgbWriter implements FrameWriter {
+        final OutputStream out;
+        final byte buf[];
+
+        RgbWriter(int width, int height, OutputStream out) {
+            this.out = out;
+            buf = new byte[width * height * 3];
+        }
+
+        public void write(int argb[]) throws IOException {
+            int j = 0;
+            for(int i=0; i<argb.length; i++) {
+                int c = argb[i];
+                buf[j++] = (byte)(c >> 16);
+                buf[j++] = (byte)(c >> 8);
+                buf[j++] = (byte)c;
+            }
+            out.write(buf);
+        }
+
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** YUV4MPEG2 with full-resolution chroma (C444), BT.601 studio range. */
+    static class Y4mWriter implements FrameWriter {
+        static final byte FRAME[] = "FRAME\n".getBytes(Charset.forName("US-ASCII"));
+        final OutputStream out;
+        final byte buf[];
+        final int size;
+
+        Y4mWriter(int width, int height, int fps, OutputStream out) throws IOException {
+            this.out = out;
+            size = width * height;
+            buf = new byte[size * 3];
+            String header = "YUV4MPEG2 W" + width + " H" + height + " F" + fps + ":1 Ip A1:1 C444\n";
+            out.write(header.getBytes(Charset.forName("US-ASCII")));
+        }
+
+        public void write(int argb[]) throws IOException {
+            for(int i=0; i<size; i++) {
+                int c = argb[i];
+                int r = (c >> 16) & 0xFF;
+                int g = (c >> 8) & 0xFF;
+                int b = c & 0xFF;
+                buf[i] = (byte)(((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+                buf[size + i] = (byte)(((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+                buf[2 * size + i] = (byte)(((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+            }
+            out.write(FRAME);
+            out.write(buf);
+        }
+
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** One PNG per frame, named from a {@link String#format} pattern. */
+    static class PngWriter implements FrameWriter {
+        final BufferedImage image;
+        final String pattern;
+        final int width;
+        final int height;
+        int index = 0;
+
+        PngWriter(int width, int height, String pattern) {
+            this.width = width;
+            this.height = height;
+            this.pattern = pattern;
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+
+        public void write(int argb[]) throws IOException {
+            image.setRGB(0, 0, width, height, argb, 0, width);
+            File file = new File(String.format(Locale.US, pattern, index++));
+            File dir = file.getAbsoluteFile().getParentFile();
+            if(dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            if(!ImageIO.write(image, "png", file)) {
+                throw new IOException("No PNG writer available");
+            }
+        }
+
+        public void close() {
+        }
+    }
+}
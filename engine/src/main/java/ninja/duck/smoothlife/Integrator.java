@@ -0,0 +1,270 @@
+package ninja.duck.smoothlife;
+
+/**
+ * Time integrators for smooth timestepping.
+ * <p>
+ * Smooth SmoothLife relaxes each cell towards the transition function,
+ * df/dt = s(n[f], m[f]) - f. Explicit Euler needs a small dt to stay
+ * accurate. The higher order methods cost extra convolutions per step but
+ * stay accurate at a much larger dt. The exponential and semi-implicit forms
+ * cost the same as Euler and are stable for any dt.
+ */
+public abstract class Integrator {
+
+    /** Computes the n (annulus) and m (disk) neighbourhood averages of a field. */
+    public interface Convolution {
+        void convolve(double f[], double n_out[], double m_out[]);
+    }
+
+    public static final String EULER = "euler";
+    public static final String HEUN = "heun";
+    public static final String RK4 = "rk4";
+    public static final String EXPONENTIAL = "exponential";
+    public static final String SEMI_IMPLICIT = "semi_implicit";
+
+    final String name;
+    double y[];
+    double s[];
+    double acc[];
+
+    Integrator(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the integrator with the specified name. Defaults to Euler if
+     * the name is unknown.
+     */
+    public static Integrator get(String name) {
+        if(HEUN.equals(name)) return new Heun();
+        if(RK4.equals(name)) return new RungeKutta4();
+        if(EXPONENTIAL.equals(name)) return new Exponential();
+        if(SEMI_IMPLICIT.equals(name)) return new SemiImplicit();
+        return new Euler();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Number of convolutions per step. */
+    abstract int stages();
+
+    /**
+     * Order of the error estimate returned by {@link #step}: 2 for an
+     * embedded estimate, 1 when it is only the RMS change of the field.
+     * Both are taken over the cells that moved, see {@link Rules#ACTIVE_EPS}.
+     */
+    int error_order() {
+        return 1;
+    }
+
+    /** Largest dt this method handles without overshooting badly. */
+    abstract double max_dt();
+
+    /**
+     * Advance {@code f} in place by {@code dt}.
+     *
+     * @return an RMS estimate of the local error over the active cells, see
+     *         {@link #error_order()}
+     */
+    abstract double step(double f[], double dt, Rules rules, Convolution conv, double n[], double m[]);
+
+    void ensure_work(int size) {
+        if(s == null || s.length != size) {
+            y = new double[size];
+            s = new double[size];
+            acc = new double[size];
+        }
+    }
+
+    static double clamp(double v) {
+        return Math.min(Math.max(v, 0.0), 1.0);
+    }
+
+    static class Euler extends Integrator {
+        Euler() {
+            super(EULER);
+        }
+
+        int stages() {
+            return 1;
+        }
+
+        double max_dt() {
+            return 1.0;
+        }
+
+        double step(double f[], double dt, Rules rules, Convolution conv, double n[], double m[]) {
+            conv.convolve(f, n, m);
+            // The smooth rules already fuse the lookup with an Euler update
+            rules.s_fast(f, n, m, dt);
+            return rules.rms_change;
+        }
+    }
+
+    static class Heun extends Integrator {
+        Heun() {
+            super(HEUN);
+        }
+
+        int stages() {
+            return 2;
+        }
+
+        int error_order() {
+            return 2;
+        }
+
+        double max_dt() {
+            return 1.5;
+        }
+
+        double step(double f[], double dt, Rules rules, Convolution conv, double n[], double m[]) {
+            ensure_work(f.length);
+            conv.convolve(f, n, m);
+            rules.s_lookup(s, n, m);
+            for(int i=0; i<f.length; i++) {
+                acc[i] = s[i] - f[i];
+                y[i] = f[i] + dt * acc[i];
+            }
+            conv.convolve(y, n, m);
+            rules.s_lookup(s, n, m);
+            double err = 0.0;
+            int active = 0;
+            for(int i=0; i<f.length; i++) {
+                // The Euler predictor y is the embedded lower order solution
+                double v = clamp(f[i] + 0.5 * dt * (acc[i] + s[i] - y[i]));
+                if(Math.abs(v - f[i]) > Rules.ACTIVE_EPS) {
+                    double d = v - clamp(y[i]);
+                    err += d * d;
+                    active++;
+                }
+                f[i] = v;
+            }
+            return Rules.active_rms(err, active);
+        }
+    }
+
+    static class RungeKutta4 extends Integrator {
+        RungeKutta4() {
+            super(RK4);
+        }
+
+        int stages() {
+            return 4;
+        }
+
+        double max_dt() {
+            return 2.0;
+        }
+
+        double step(double f[], double dt, Rules rules, Convolution conv, double n[], double m[]) {
+            ensure_work(f.length);
+            conv.convolve(f, n, m);
+            rules.s_lookup(s, n, m);
+            for(int i=0; i<f.length; i++) {
+                double k1 = s[i] - f[i];
+                acc[i] = k1;
+                y[i] = f[i] + 0.5 * dt * k1;
+            }
+            conv.convolve(y, n, m);
+            rules.s_lookup(s, n, m);
+            for(int i=0; i<f.length; i++) {
+                double k2 = s[i] - y[i];
+                acc[i] += 2 * k2;
+                y[i] = f[i] + 0.5 * dt * k2;
+            }
+            conv.convolve(y, n, m);
+            rules.s_lookup(s, n, m);
+            for(int i=0; i<f.length; i++) {
+                double k3 = s[i] - y[i];
+                acc[i] += 2 * k3;
+                y[i] = f[i] + dt * k3;
+            }
+            conv.convolve(y, n, m);
+            rules.s_lookup(s, n, m);
+            double change = 0.0;
+            int active = 0;
+            for(int i=0; i<f.length; i++) {
+                double k4 = s[i] - y[i];
+                double v = clamp(f[i] + dt / 6 * (acc[i] + k4));
+                double d = v - f[i];
+                if(Math.abs(d) > Rules.ACTIVE_EPS) {
+                    change += d * d;
+                    active++;
+                }
+                f[i] = v;
+            }
+            return Rules.active_rms(change, active);
+        }
+    }
+
+    /** Exact solution of df/dt = s - f with s held fixed over the step. */
+    static class Exponential extends Integrator {
+        Exponential() {
+            super(EXPONENTIAL);
+        }
+
+        int stages() {
+            return 1;
+        }
+
+        double max_dt() {
+            return 4.0;
+        }
+
+        double step(double f[], double dt, Rules rules, Convolution conv, double n[], double m[]) {
+            ensure_work(f.length);
+            conv.convolve(f, n, m);
+            rules.s_lookup(s, n, m);
+            double decay = Math.exp(-dt);
+            double change = 0.0;
+            int active = 0;
+            for(int i=0; i<f.length; i++) {
+                double v = s[i] + (f[i] - s[i]) * decay;
+                double d = v - f[i];
+                if(Math.abs(d) > Rules.ACTIVE_EPS) {
+                    change += d * d;
+                    active++;
+                }
+                f[i] = v;
+            }
+            return Rules.active_rms(change, active);
+        }
+    }
+
+    /** Backward Euler in f with s taken explicitly: f' = (f + dt*s) / (1 + dt). */
+    static class SemiImplicit extends Integrator {
+        SemiImplicit() {
+            super(SEMI_IMPLICIT);
+        }
+
+        int stages() {
+            return 1;
+        }
+
+        double max_dt() {
+            return 4.0;
+        }
+
+        double step(double f[], double dt, Rules rules, Convolution conv, double n[], double m[]) {
+            ensure_work(f.length);
+            conv.convolve(f, n, m);
+            rules.s_lookup(s, n, m);
+            double inv = 1.0 / (1.0 + dt);
+            double change = 0.0;
+            int active = 0;
+            for(int i=0; i<f.length; i++) {
+                double v = (f[i] + dt * s[i]) * inv;
+                double d = v - f[i];
+                if(Math.abs(d) > Rules.ACTIVE_EPS) {
+                    change += d * d;
+                    active++;
+                }
+                f[i] = v;
+            }
+            return Rules.active_rms(change, active);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ninja.duck.smoothlife;
+
+/**
+ * Estimates what a configuration will take in memory before it is built.
+ * <p>
+ * Almost everything is a buffer of doubles the size of the grid, or of its
+ * half spectrum (h x (w/2 + 1) complex values), so the estimate just counts
+ * buffers, including the sparse window cache and, during a rebuild, the new
+ * convolver made while the old one is still stepping. Over a budget, callers
+ * first switch to {@link Simulation.Config#low_memory} and then coarsen the
+ * grid until it fits, instead of letting the system kill the process.
+ */
+public class MemoryBudget {
+    /** Bytes the simulation for {@code config} holds, native and Java. */
+    public static long simulation_bytes(Simulation.Config config) {
+        long cells = (long)config.width * config.height;
+        // Field, n and m buffers
+        long doubles = 3 * cells + convolver_doubles(config.height, config.width, config.low_memory);
+        doubles += sparse_doubles(config.height, config.width);
+        if(config.dt > 0 && Integrator.get(config.integrator).stages() > 1) {
+            doubles += 3 * cells;
+        }
+        doubles += (long)Simulation.RULE_TABLE * Simulation.RULE_TABLE;
+        return doubles * 8;
+    }
+
+    /**
+     * Bytes a rebuild from {@code old} to {@code next} holds on top of the
+     * old simulation. A new grid or new plans are made while the old ones
+     * keep stepping, so both convolvers are alive until the swap.
+     */
+    public static long rebuild_bytes(Simulation.Config old, Simulation.Config next) {
+        if((next.diff(old) & (Simulation.CHANGED_GRID | Simulation.CHANGED_PLANS)) == 0) {
+            return 0;
+        }
+        return convolver_doubles(next.height, next.width, next.low_memory) * 8;
+    }
+
+    /** Doubles in a {@link Convolver}: its kernel spectra, scratch arrays and native buffers. */
+    static long convolver_doubles(long height, long width, boolean low_memory) {
+        long cells = height * width;
+        long spectrum = height * (width/2 + 1) * 2;
+        if(low_memory) {
+            // Two kernel spectra, two scratch arrays, one in-place native
+            // buffer each way
+            return 2 * spectrum + 2 * spectrum + 2 * spectrum;
+        }
+        // Two kernel spectra, three scratch arrays, separate native in and
+        // out buffers for the forward and both reverse transforms
+        return 2 * spectrum + 3 * spectrum + 3 * cells + 3 * spectrum;
+    }
+
+    /**
+     * Most doubles the {@link SparseStepper} holds for a grid: its window
+     * convolvers, whose areas add up to at most
+     * {@link SparseStepper#MAX_CACHE_AREA} of the grid, and the window
+     * copies of field, n and m.
+     */
+    static long sparse_doubles(long height, long width) {
+        long cells = height * width;
+        long windows = (long)(SparseStepper.MAX_CACHE_AREA * cells);
+        // Counted as one row the length of all the windows together. Each
+        // real window's half spectrum has up to two values more per row, in
+        // each of the eight spectrum sized buffers, and at most as many rows
+        // as the grid.
+        long doubles = convolver_doubles(1, windows, false) + 8 * SparseStepper.CACHE_SIZE * 2 * height;
+        return doubles + 3 * (long)(SparseStepper.MAX_AREA_FRACTION * cells);
+    }
+
+    /**
+     * Bytes to show a {@code width x height} window of the grid: pixels, the
+     * shown indices and two bitmaps, plus the {@link PixelBuffer} when there
+     * is a {@code format}. No format is ARGB_8888 bitmaps set directly.
+     */
+    public static long view_bytes(int width, int height, String format) {
+        long cells = (long)width * height;
+        if(format == null) {
+            return cells * (4 + 2 + 2 * 4);
+        }
+        int bpp = PixelBuffer.bytes_per_pixel(format);
+        return cells * (4 + 2 + 3 * bpp);
+    }
+
+    /** Bytes frame interpolation adds for {@code config}: previous, next and blended fields. */
+    public static long interpolation_bytes(Simulation.Config config) {
+        return 3L * config.width * config.height * 8;
+    }
+}
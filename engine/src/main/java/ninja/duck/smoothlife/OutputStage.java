@@ -0,0 +1,261 @@
+package ninja.duck.smoothlife;
+
+import java.util.Arrays;
+
+/**
+ * Turns the field into pixels, one tile at a time.
+ * <p>
+ * Most of the field sits near 0 between gliders, so recoloring everything
+ * every frame is mostly wasted work. Each tile remembers the field values it
+ * was last colored from and is only recolored when some cell has moved more
+ * than {@link #THRESHOLD} since then.
+ * <p>
+ * Those values are kept quantized to {@link #LEVELS} steps in a 16-bit
+ * index buffer, and pixels are a palette lookup of the index. The palette
+ * has the color scaling curve and colormap folded in, so new colors (see
+ * {@link #set_colors}) cost one lookup per pixel and nothing per level. The
+ * indices are a quarter the size of the field, which keeps the change test
+ * cheap, and a compact copy of what is on screen.
+ * <p>
+ * Recolored tiles are tracked separately for each of the two bitmaps we flip
+ * between, so a bitmap only gets re-uploaded where it is actually stale.
+ * <p>
+ * The pixels can be a window onto a bigger field, see {@link #set_window},
+ * so only what is on screen gets colored and uploaded.
+ */
+public class OutputStage {
+    public static final int TILE = 32;
+    public static final double THRESHOLD = 1.0 / 512;
+    /** Quantization steps from 0 to 1. Index 0 is NaN. */
+    public static final int LEVELS = 4096;
+    // The value of each index, so the change test is a lookup
+    private static final double VALUES[] = new double[LEVELS + 1];
+    static {
+        for(int k=0; k<=LEVELS; k++) {
+            VALUES[k] = level(k);
+        }
+    }
+
+    /** Receives the sub-rectangles of the pixel array that need uploading. */
+    public interface SpanSink {
+        void span(int x, int y, int w, int h);
+    }
+
+    final int width;
+    final int height;
+    final int tiles_x;
+    final int tiles_y;
+    private final char index[];
+    private final int palette[] = new int[LEVELS + 1];
+    // The value of each index through the color scaling curve, kept until
+    // the scaling changes
+    private final double scaled[] = new double[LEVELS + 1];
+    private int scaled_for = -1;
+    private final boolean stale[][];
+    private boolean force_all = true;
+    private boolean recolor = false;
+
+    private int field_width;
+    private int field_height;
+    private int x0 = 0;
+    private int y0 = 0;
+    // Where each window row starts in the field and which field column each
+    // window column reads, with the wraparound worked out once
+    private final int row_start[];
+    private final int col_index[];
+
+    /** Pixels for a {@code width} x {@code height} field, or window onto one. */
+    public OutputStage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        tiles_x = (width + TILE - 1) / TILE;
+        tiles_y = (height + TILE - 1) / TILE;
+        index = new char[width * height];
+        stale = new boolean[2][tiles_x * tiles_y];
+        field_width = width;
+        field_height = height;
+        row_start = new int[height];
+        col_index = new int[width];
+        index_window();
+    }
+
+    /**
+     * Show the window of a {@code field_width} x {@code field_height} torus
+     * whose top left cell is ({@code x0}, {@code y0}), wrapping around its
+     * edges. Moving the window recolors all of it.
+     */
+    public void set_window(int field_width, int field_height, int x0, int y0) {
+        x0 = Math.floorMod(x0, field_width);
+        y0 = Math.floorMod(y0, field_height);
+        if(field_width == this.field_width && field_height == this.field_height && x0 == this.x0 && y0 == this.y0) {
+            return;
+        }
+        this.field_width = field_width;
+        this.field_height = field_height;
+        this.x0 = x0;
+        this.y0 = y0;
+        index_window();
+        force_all = true;
+    }
+
+    private void index_window() {
+        for(int r=0; r<height; r++) {
+            row_start[r] = ((y0 + r) % field_height) * field_width;
+        }
+        for(int c=0; c<width; c++) {
+            col_index[c] = (x0 + c) % field_width;
+        }
+    }
+
+    public int tile_count() {
+        return tiles_x * tiles_y;
+    }
+
+    /** Recolor everything from the field on the next render. */
+    public void invalidate() {
+        force_all = true;
+    }
+
+    /**
+     * Color with {@code cmap} through the {@code color_scaling} curve from
+     * now on. The next {@link #render} repaints every pixel from its index
+     * and only requantizes the tiles that changed. O({@link #LEVELS}).
+     */
+    public void set_colors(ColorMap cmap, int color_scaling) {
+        if(color_scaling == 50) {
+            cmap.map(VALUES, palette, 0, LEVELS + 1);
+        }
+        else {
+            if(scaled_for != color_scaling) {
+                scaled[0] = Double.NaN;
+                for(int k=1; k<=LEVELS; k++) {
+                    scaled[k] = sigmoid_tuneable(VALUES[k], color_scaling);
+                }
+                scaled_for = color_scaling;
+            }
+            cmap.map(scaled, palette, 0, LEVELS + 1);
+        }
+        recolor = true;
+    }
+
+    /** Index of value {@code v}. Clamping keeps NaN, which casts to 0. */
+    static int quantize(double v) {
+        return (int)(Math.min(Math.max(v, 0.), 1.) * (LEVELS - 1) + 1.5);
+    }
+
+    /** The value index {@code k} stands for. */
+    public static double level(int k) {
+        return k == 0 ? Double.NaN : (k - 1) / (double)(LEVELS - 1);
+    }
+
+    /**
+     * Recolor the tiles of the window onto {@code field} that changed into
+     * {@code pixels}, and all of them after {@link #set_colors}.
+     *
+     * @return the number of tiles recolored
+     */
+    public int render(double field[], int pixels[]) {
+        boolean lookup_all = recolor && !force_all;
+        recolor = false;
+        if(lookup_all) {
+            // New colors for what is already on screen, the tiles that moved
+            // are requantized below
+            for(int i=0; i<index.length; i++) {
+                pixels[i] = palette[index[i]];
+            }
+            Arrays.fill(stale[0], true);
+            Arrays.fill(stale[1], true);
+        }
+        int recolored = 0;
+        for(int ty=0; ty<tiles_y; ty++) {
+            int r0 = ty * TILE;
+            int r1 = Math.min(r0 + TILE, height);
+            for(int tx=0; tx<tiles_x; tx++) {
+                int c0 = tx * TILE;
+                int c1 = Math.min(c0 + TILE, width);
+                if(!force_all && !tile_changed(field, r0, r1, c0, c1)) {
+                    continue;
+                }
+                color_tile(field, pixels, r0, r1, c0, c1);
+                int t = ty * tiles_x + tx;
+                stale[0][t] = true;
+                stale[1][t] = true;
+                recolored++;
+            }
+        }
+        force_all = false;
+        return lookup_all ? tile_count() : recolored;
+    }
+
+    /**
+     * Hand the stale parts of bitmap {@code buffer} to {@code sink}. Runs of
+     * neighbouring stale tiles in a row are merged into one span.
+     *
+     * @return the number of tiles uploaded
+     */
+    public int upload(int buffer, SpanSink sink) {
+        boolean flags[] = stale[buffer];
+        int uploaded = 0;
+        for(int ty=0; ty<tiles_y; ty++) {
+            int r0 = ty * TILE;
+            int h = Math.min(TILE, height - r0);
+            int tx = 0;
+            while(tx < tiles_x) {
+                if(!flags[ty * tiles_x + tx]) {
+                    tx++;
+                    continue;
+                }
+                int start = tx;
+                while(tx < tiles_x && flags[ty * tiles_x + tx]) {
+                    flags[ty * tiles_x + tx] = false;
+                    tx++;
+                }
+                int c0 = start * TILE;
+                int c1 = Math.min(tx * TILE, width);
+                sink.span(c0, r0, c1 - c0, h);
+                uploaded += tx - start;
+            }
+        }
+        return uploaded;
+    }
+
+    private boolean tile_changed(double field[], int r0, int r1, int c0, int c1) {
+        for(int r=r0; r<r1; r++) {
+            int row = r * width;
+            int src = row_start[r];
+            for(int c=c0; c<c1; c++) {
+                double v = field[src + col_index[c]];
+                int k = index[row + c];
+                // Fails for NaN on either side, which is a change unless it
+                // was NaN before too
+                if(!(Math.abs(v - VALUES[k]) <= THRESHOLD) && !(k == 0 && v != v)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void color_tile(double field[], int pixels[], int r0, int r1, int c0, int c1) {
+        for(int r=r0; r<r1; r++) {
+            int row = r * width;
+            int src = row_start[r];
+            for(int c=c0; c<c1; c++) {
+                int k = quantize(field[src + col_index[c]]);
+                index[row + c] = (char)k;
+                pixels[row + c] = palette[k];
+            }
+        }
+    }
+
+    static double sigmoid_tuneable(double x, int ik) {
+        double k = (ik - 50) / 50.1;
+        double offset = 0.0;
+        if(x > 0.5) {
+            x -= 0.5;
+            k *= -1.0;
+            offset = 0.5;
+        }
+        return (k*x - x) / (4*k*x - k - 1) + offset;
+    }
+}
@@ -0,0 +1,89 @@
+package ninja.duck.smoothlife;
+
+/**
+ * Animates the colors without touching the field.
+ * <p>
+ * Every frame the sampled table of the chosen map is re-indexed, either
+ * rotated along itself or blended towards a second map and back, over one
+ * period. That rewrites {@link ColorMap#LUT_SIZE} entries; coloring stays the
+ * same one lookup per pixel. The phase moves in table steps, so frames that
+ * land on the same step don't need recoloring at all.
+ */
+public class PaletteCycle {
+    public static final String OFF = "off";
+    public static final String ROTATE = "rotate";
+    public static final String MORPH = "morph";
+
+    private final String mode;
+    private final ColorMap base;
+    private final ColorMap target;
+    private final long period_millis;
+    private final ColorMap cycled;
+    private int phase = -1;
+
+    /**
+     * @param mode {@link #OFF}, {@link #ROTATE} or {@link #MORPH}
+     * @param target the map {@link #MORPH} blends towards
+     * @param period_seconds time for one full cycle
+     */
+    public PaletteCycle(String mode, ColorMap base, ColorMap target, double period_seconds) {
+        if(!OFF.equals(mode) && !ROTATE.equals(mode) && !MORPH.equals(mode)) {
+            throw new IllegalArgumentException("Unknown palette cycle " + mode);
+        }
+        this.mode = mode;
+        this.base = base;
+        this.target = target;
+        period_millis = Math.max((long)(period_seconds * 1000), 1);
+        cycled = OFF.equals(mode) ? base : new ColorMap(base);
+    }
+
+    public boolean is_active() {
+        return cycled != base;
+    }
+
+    /** The map to color with, as of the last {@link #advance}. */
+    public ColorMap map() {
+        return cycled;
+    }
+
+    /**
+     * Re-index the table for time {@code millis}.
+     *
+     * @return whether the colors changed, so everything needs recoloring
+     */
+    public boolean advance(long millis) {
+        if(!is_active()) {
+            return false;
+        }
+        int size = ColorMap.LUT_SIZE;
+        int now = (int)(Math.floorMod(millis, period_millis) * size / period_millis);
+        if(now == phase) {
+            return false;
+        }
+        phase = now;
+        // Slot 0 is the NaN color, which stays put
+        int from[] = base.lut;
+        int lut[] = cycled.lut;
+        if(ROTATE.equals(mode)) {
+            for(int i=0; i<size; i++) {
+                lut[i + 1] = from[(i + phase) % size + 1];
+            }
+        }
+        else {
+            // There and back once per period
+            int w = (int)Math.round(256 * (1 - Math.cos(2 * Math.PI * phase / size)) / 2);
+            int to[] = target.lut;
+            for(int i=1; i<=size; i++) {
+                lut[i] = blend(from[i], to[i], w);
+            }
+        }
+        return true;
+    }
+
+    /** {@code a} moved {@code w}/256 of the way to {@code b}, per channel. */
+    static int blend(int a, int b, int w) {
+        int rb = (a & 0xFF00FF) * (256 - w) + (b & 0xFF00FF) * w;
+        int g = (a & 0x00FF00) * (256 - w) + (b & 0x00FF00) * w;
+        return 0xFF000000 | ((rb >>> 8) & 0xFF00FF) | ((g >>> 8) & 0x00FF00);
+    }
+}
@@ -0,0 +1,133 @@
+package ninja.duck.smoothlife;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A frame packed the way a bitmap stores it, in a direct buffer outside the
+ * Java heap, so it can go to the bitmap with one {@code copyPixelsFromBuffer}
+ * instead of converting pixel by pixel in {@code setPixels}.
+ * <p>
+ * {@link #RGB_565} is half the bytes of {@link #ARGB_8888} to pack, copy and
+ * draw. Its 32 levels of red and blue band on smooth color maps, which
+ * {@link #RGB_565_DITHER} breaks up with a 4x4 ordered dither. The dither
+ * depends only on the pixel's position, so tiles packed on different frames
+ * still line up.
+ */
+public class PixelBuffer {
+    public static final String ARGB_8888 = "argb_8888";
+    public static final String RGB_565 = "rgb_565";
+    public static final String RGB_565_DITHER = "rgb_565_dither";
+
+    // 4x4 Bayer matrix, 0 to 15
+    private static final int BAYER[] = {
+            0, 8, 2, 10,
+            12, 4, 14, 6,
+            3, 11, 1, 9,
+            15, 7, 13, 5};
+
+    final String format;
+    final int width;
+    final int height;
+    private final ByteBuffer bytes;
+    private final IntBuffer ints;
+    private final ShortBuffer shorts;
+    // One span of a row, packed before the bulk put
+    private final int int_row[];
+    private final short short_row[];
+
+    /**
+     * @param format {@link #ARGB_8888}, {@link #RGB_565} or {@link #RGB_565_DITHER}
+     */
+    public PixelBuffer(String format, int width, int height) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        bytes = ByteBuffer.allocateDirect(width * height * bytes_per_pixel(format));
+        if(is_565(format)) {
+            // A native 16-bit value per pixel
+            bytes.order(ByteOrder.nativeOrder());
+            shorts = bytes.asShortBuffer();
+            short_row = new short[width];
+            ints = null;
+            int_row = null;
+        }
+        else {
+            // R, G, B, A bytes in memory
+            bytes.order(ByteOrder.LITTLE_ENDIAN);
+            ints = bytes.asIntBuffer();
+            int_row = new int[width];
+            shorts = null;
+            short_row = null;
+        }
+    }
+
+    public static boolean is_565(String format) {
+        if(RGB_565.equals(format) || RGB_565_DITHER.equals(format)) {
+            return true;
+        }
+        if(!ARGB_8888.equals(format)) {
+            throw new IllegalArgumentException("Unknown pixel format " + format);
+        }
+        return false;
+    }
+
+    public static int bytes_per_pixel(String format) {
+        return is_565(format) ? 2 : 4;
+    }
+
+    public long bytes() {
+        return bytes.capacity();
+    }
+
+    /** Pack the {@code w} x {@code h} span at ({@code x}, {@code y}) of {@code argb}, {@link #width} wide. */
+    public void pack(int argb[], int x, int y, int w, int h) {
+        boolean dither = RGB_565_DITHER.equals(format);
+        for(int r=y; r<y+h; r++) {
+            int row = r * width;
+            if(shorts == null) {
+                for(int c=0; c<w; c++) {
+                    int p = argb[row + x + c];
+                    int_row[c] = (p & 0xFF00FF00) | (p >> 16 & 0xFF) | (p & 0xFF) << 16;
+                }
+                ints.position(row + x);
+                ints.put(int_row, 0, w);
+            }
+            else if(dither) {
+                int bayer = (r & 3) * 4;
+                for(int c=0; c<w; c++) {
+                    short_row[c] = to_565(argb[row + x + c], BAYER[bayer + ((x + c) & 3)]);
+                }
+                shorts.position(row + x);
+                shorts.put(short_row, 0, w);
+            }
+            else {
+                for(int c=0; c<w; c++) {
+                    int p = argb[row + x + c];
+                    short_row[c] = (short)((p >> 8 & 0xF800) | (p >> 5 & 0x07E0) | (p >> 3 & 0x001F));
+                }
+                shorts.position(row + x);
+                shorts.put(short_row, 0, w);
+            }
+        }
+    }
+
+    /** The packed frame, from the start. */
+    public ByteBuffer buffer() {
+        bytes.rewind();
+        return bytes;
+    }
+
+    /**
+     * {@code argb} with each channel raised by {@code d}/16 of a step before
+     * it is truncated to 5 or 6 bits.
+     */
+    static short to_565(int argb, int d) {
+        int r = Math.min((argb >> 16 & 0xFF) + (d >> 1), 0xFF) >> 3;
+        int g = Math.min((argb >> 8 & 0xFF) + (d >> 2), 0xFF) >> 2;
+        int b = Math.min((argb & 0xFF) + (d >> 1), 0xFF) >> 3;
+        return (short)(r << 11 | g << 5 | b);
+    }
+}
@@ -0,0 +1,152 @@
+package ninja.duck.smoothlife;
+
+/**
+ * Picks a quality tier from measured frame times.
+ * <p>
+ * Frame work times (not counting the frame delay) are averaged over windows
+ * of {@link #WINDOW} frames. A window that is over budget counts towards
+ * stepping down to a cheaper tier; a window that would still fit the budget
+ * at the next better tier counts towards stepping up. Stepping up needs more
+ * windows in a row than stepping down, and every change is followed by a
+ * settle period where samples are ignored, so the tier doesn't flap while the
+ * new configuration warms up.
+ * <p>
+ * Nothing in here touches Android so the policy can be driven from recorded
+ * timing traces.
+ */
+public class QualityGovernor {
+    public static final int WINDOW = 16;
+    public static final int SETTLE_FRAMES = 24;
+    public static final int DOWN_WINDOWS = 2;
+    public static final int UP_WINDOWS = 6;
+    public static final double OVER_BUDGET = 1.15;
+    public static final double UP_HEADROOM = 0.85;
+
+    /**
+     * A quality tier. Cost is mostly proportional to the number of grid
+     * cells, so coarser tiers add to the user's scale. The last tier also
+     * stretches out the frame delay to save battery when even that isn't
+     * enough. The delay doesn't make a frame's work any cheaper, so there is
+     * only one such tier, and it is left once the work fits the budget again
+     * at the coarsest scale.
+     */
+    public static class Tier {
+        final int scale_add;
+        final int extra_delay;
+
+        Tier(int scale_add, int extra_delay) {
+            this.scale_add = scale_add;
+            this.extra_delay = extra_delay;
+        }
+    }
+
+    public static final Tier[] TIERS = {
+            new Tier(0, 0),
+            new Tier(1, 0),
+            new Tier(2, 0),
+            new Tier(3, 0),
+            new Tier(3, 150),
+    };
+
+    private double budget_ms;
+    private int base_scale = 1;
+    private int tier = 0;
+    private int settle = SETTLE_FRAMES;
+    private int samples = 0;
+    private double window_sum = 0;
+    private int over_count = 0;
+    private int under_count = 0;
+
+    public QualityGovernor(double budget_ms) {
+        this.budget_ms = budget_ms;
+    }
+
+    public void set_budget(double budget_ms) {
+        this.budget_ms = budget_ms;
+        restart_window();
+    }
+
+    /** Set the user's chosen scale. Tiers are relative to it. */
+    public void set_base_scale(int base_scale) {
+        this.base_scale = Math.max(base_scale, 1);
+        restart_window();
+    }
+
+    public int tier() {
+        return tier;
+    }
+
+    public int scale() {
+        return base_scale + TIERS[tier].scale_add;
+    }
+
+    public int extra_delay() {
+        return TIERS[tier].extra_delay;
+    }
+
+    public void reset() {
+        tier = 0;
+        restart_window();
+    }
+
+    /**
+     * Feed one frame's work time.
+     *
+     * @return true if the tier changed and the engine should be reconfigured
+     */
+    public boolean add_sample(double work_ms) {
+        if(settle > 0) {
+            settle--;
+            return false;
+        }
+        window_sum += work_ms;
+        if(++samples < WINDOW) {
+            return false;
+        }
+        double mean = window_sum / samples;
+        samples = 0;
+        window_sum = 0;
+
+        if(mean > budget_ms * OVER_BUDGET) {
+            under_count = 0;
+            if(++over_count >= DOWN_WINDOWS && tier < TIERS.length - 1) {
+                return change_tier(tier + 1);
+            }
+        }
+        else if(tier > 0 && predicted_cost(mean, tier - 1) < budget_ms * UP_HEADROOM) {
+            over_count = 0;
+            if(++under_count >= UP_WINDOWS) {
+                return change_tier(tier - 1);
+            }
+        }
+        else {
+            over_count = 0;
+            under_count = 0;
+        }
+        return false;
+    }
+
+    /** Estimate the frame cost at another tier from the cost at the current one. */
+    double predicted_cost(double mean_ms, int other) {
+        double s_now = base_scale + TIERS[tier].scale_add;
+        double s_other = base_scale + TIERS[other].scale_add;
+        double ratio = s_now / s_other;
+        return mean_ms * ratio * ratio;
+    }
+
+    private boolean change_tier(int new_tier) {
+        boolean changed = scale() != base_scale + TIERS[new_tier].scale_add
+                || extra_delay() != TIERS[new_tier].extra_delay;
+        tier = new_tier;
+        restart_window();
+        return changed;
+    }
+
+    private void restart_window() {
+        settle = SETTLE_FRAMES;
+        samples = 0;
+        window_sum = 0;
+        over_count = 0;
+        under_count = 0;
+    }
+}
@@ -0,0 +1,86 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+import org.bytedeco.javacpp.DoublePointer;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the native buffers (and anything else registered with it) for one
+ * configuration and frees them all at once.
+ * <p>
+ * JavaCPP pointers and Android bitmaps otherwise hang around until the GC
+ * gets to them, so every reconfiguration left the old ones behind and
+ * native memory kept climbing. Whoever owns an arena releases it when it is
+ * done: a convolver when it is destroyed, an engine when its grid changes
+ * or its surface goes away.
+ * <p>
+ * Buffers come from {@code fftw_alloc_real}, aligned for FFTW's SIMD code.
+ * Arrays passed to the new-array execute functions must be aligned like the
+ * ones the plan was made with, so temporary buffers for those come from an
+ * arena too. An arena is only used from one thread at a time, the live byte
+ * count across all of them is safe to read from anywhere.
+ */
+public class ResourceArena {
+    /** Something an arena frees when it is released. */
+    public interface Resource {
+        long bytes();
+        void release();
+    }
+
+    private static final AtomicLong live = new AtomicLong();
+
+    private final ArrayList<Resource> owned = new ArrayList<>();
+    private long bytes = 0;
+
+    /** A SIMD-aligned native buffer of {@code n} doubles, freed with the arena. */
+    public DoublePointer doubles(final long n) {
+        final DoublePointer p = fftw3.fftw_alloc_real(n);
+        if(p == null || p.isNull()) {
+            throw new OutOfMemoryError("Could not allocate " + n + " doubles");
+        }
+        // JavaCPP doesn't know the size of memory it didn't allocate itself
+        p.capacity(n);
+        own(new Resource() {
+            @Override
+            public long bytes() {
+                return n * 8;
+            }
+
+            @Override
+            public void release() {
+                fftw3.fftw_free(p);
+            }
+        });
+        return p;
+    }
+
+    /** Take ownership of {@code resource}, releasing it with the arena. */
+    public <T extends Resource> T own(T resource) {
+        owned.add(resource);
+        bytes += resource.bytes();
+        live.addAndGet(resource.bytes());
+        return resource;
+    }
+
+    /** Bytes currently owned by this arena. */
+    public long bytes() {
+        return bytes;
+    }
+
+    /** Free everything, newest first. The arena can be used again afterwards. */
+    public void release() {
+        for(int i=owned.size()-1; i>=0; i--) {
+            owned.get(i).release();
+        }
+        owned.clear();
+        live.addAndGet(-bytes);
+        bytes = 0;
+    }
+
+    /** Bytes owned by all arenas that haven't been released. */
+    public static long live_bytes() {
+        return live.get();
+    }
+}
@@ -0,0 +1,86 @@
+package ninja.duck.smoothlife;
+
+/**
+ * SmoothLife transition function s(n, m) for discrete timestepping, with a
+ * precalculated lookup table so stepping is a table lookup per cell.
+ */
+public class Rules {
+    double B1 = 0.278f;
+    double B2 = 0.365f;
+    double D1 = 0.267f;
+    double D2 = 0.445f;
+
+    double N = 0.028f;
+    double M = 0.147f;
+
+    double lookup[][];
+    int precalc_len;
+    /**
+     * Cells that move less than this in a step are left out of the error
+     * estimates, so empty space doesn't dilute them on bigger grids.
+     */
+    static final double ACTIVE_EPS = 1e-6;
+
+    /** RMS change over the active cells in the last smooth s_fast. */
+    double rms_change = 0.0;
+
+    /** RMS from a sum of squares over {@code active} cells, 0 if none moved. */
+    static double active_rms(double sum, int active) {
+        return active > 0 ? Math.sqrt(sum / active) : 0.0;
+    }
+
+    double sigma(double x, double a, double alpha) {
+        double inner = -4.0f / alpha * (x - a);
+        return 1.0f / (1.0f + Math.exp(inner));
+//                if(inner < -10.0f) {
+//                    return 0.0f;
+//                } else if(inner > 10.0f) {
+//                    return 1.0f;
+//                } else {
+//                    return 1.0f / (1.0f + (double) Math.exp(inner));
+//                }
+    }
+
+    double sigma2(double x, double a, double b) {
+        return sigma(x, a, N) * (1.0f - sigma(x, b, N));
+    }
+
+    double lerp(double a, double b, double t) {
+        return (1.0f - t) * a + t * b;
+    }
+
+    double s(double n, double m) {
+        double alive = sigma(m, 0.5f, M);
+        return sigma2(n, lerp(B1, D1, alive), lerp(B2, D2, alive));
+    }
+
+    void precalculate(int len) {
+        precalc_len = len;
+        double dlen = (double)(len );
+        lookup = new double[len][len];
+        for(int n=0; n<len; n++) {
+            for(int m=0; m<len; m++) {
+                lookup[n][m] = s(n / dlen, m / dlen);
+            }
+        }
+    }
+
+    void s_fast(double dest[], double n_arr[], double m_arr[], double dt) {
+        s_lookup(dest, n_arr, m_arr);
+    }
+
+    /** Look up the target value s(n, m) for every cell. */
+    void s_lookup(double dest[], double n_arr[], double m_arr[]) {
+        for(int i=0; i<n_arr.length; i++) {
+            int n_ind = (int)(n_arr[i] * precalc_len + 0.5);
+            int m_ind = (int)(m_arr[i] * precalc_len + 0.5);
+            // Constrain just in case
+            if(n_ind >= precalc_len) n_ind = precalc_len - 1;
+            if(n_ind < 0) n_ind = 0;
+            if(m_ind >= precalc_len) m_ind = precalc_len - 1;
+            if(m_ind < 0) m_ind = 0;
+
+            dest[i] = lookup[n_ind][m_ind];
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package ninja.duck.smoothlife;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Starting patterns for the field.
+ * <p>
+ * Everything is drawn from a {@link Random} the caller seeds, so the same
+ * seed gives the same field and the same trajectory on any run. Patterns are
+ * stamped with wraparound, so they fit any grid size and can sit across an
+ * edge like everything else on the torus. Stored shapes are kept at
+ * {@link #REFERENCE_RADIUS} and rescaled to the inner radius they are
+ * stamped at.
+ */
+public abstract class SeedPattern {
+    public static final String SPECKLES = "speckles";
+    public static final String GLIDER = "glider";
+    public static final String GLIDERS = "gliders";
+    public static final String NOISE = "noise";
+
+    static final double REFERENCE_RADIUS = 7.0;
+
+    /**
+     * A glider for discrete timestepping, captured at an inner radius of 7
+     * and quantized to one hex digit per cell. It moves towards the open
+     * side of the crescent.
+     */
+    static final String[] GLIDER_SHAPE = {
+            "00000000000000000000246786532100000000000",
+            "0000000000000000013adeefffeeda51000000000",
+            "000000000000000028efffffffffffeb300000000",
+            "0000000000000113bffffffd9878ceffd51000000",
+            "000000000001125bffffff500000029ffe5000000",
+            "00000000011357cffffff40000000006ffd400000",
+            "0000000112479cefffffb000000000008ffb20000",
+            "00000111358acefffffd0000000000001dfe81000",
+            "0000112369bdefffffe200000000000006ffd3000",
+            "00011235abdeffffff7000000000000001eff8000",
+            "00012359cdeffffffe1000000000000000effc100",
+            "0012348cdefffffffa0000000000000000fffe300",
+            "001347bdeffffffff60000000000000002fffe500",
+            "012369defffffffff4000000000000000cffff600",
+            "01357befffffffffe4000000000000001ffffe500",
+            "01369cefffffffffe4000000000000007ffffe400",
+            "0248adefffffffffe500000000000001dffffd300",
+            "0259cdfffffffffff810000000000007fffffb200",
+            "026acefffffffffffc2000000000004effffe9200",
+            "026bdefffffffffffe710000000005efffffe8310",
+            "027bdeffffffffffffc5100000028effffffd8410",
+            "026bdeffffffffffffec7421237dfffffffec8310",
+            "015bdefffffffffffffedcaabdeffffffffec9410",
+            "014adefffffffffffffffffffffffffffffeb8310",
+            "0039deffffffffffffffffffffffffffffedb8310",
+            "0016ceffffffffffffffffffffffffffffedb7210",
+            "0003aeffffffffffffffffffffffffffffeda5210",
+            "00017cefffffffffffffffffffffffffffec84210",
+            "00003aeffffffffffffffffffffffffffedb64210",
+            "000015cefffffffffffffffffffffffffed843110",
+            "0000017cefffffffffffffffffffffffeda642100",
+            "00000028defffffffffffffffffffffedb8532100",
+            "000000028cefffffffffffffffffffedc96421000",
+            "0000000027cefffffffffffffffffeeda75310000",
+            "00000000015adeffffffffffffffedca853100000",
+            "0000000000137cdeffffffffffeedca7531000000",
+            "000000000000138bdeeeeeeeeedcb863210000000",
+            "000000000000001358abcccccb986321000000000",
+            "00000000000000001123455543321100000000000"
+    };
+
+    final String name;
+
+    SeedPattern(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the pattern with the specified name. Defaults to speckles if
+     * the name is unknown.
+     */
+    public static SeedPattern get(String name) {
+        if(GLIDER.equals(name)) return new Gliders(GLIDER, false);
+        if(GLIDERS.equals(name)) return new Gliders(GLIDERS, true);
+        if(NOISE.equals(name)) return new Noise();
+        return new Speckles();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Clear {@code field} and draw the pattern into it. */
+    public void apply(double field[], int width, int height, double inner_radius, Random random) {
+        Arrays.fill(field, 0.0);
+        draw(field, width, height, inner_radius, random);
+    }
+
+    abstract void draw(double field[], int width, int height, double inner_radius, Random random);
+
+    /** Whether a lone glider is what this pattern is meant to end up as. */
+    boolean lone_glider_expected() {
+        return false;
+    }
+
+    /** Set a {@code rows} x {@code cols} block at (r0, c0) to {@code value}, wrapping around the edges. */
+    static void fill_block(double field[], int width, int height, int r0, int c0, int rows, int cols, double value) {
+        for(int rr=0; rr<rows; rr++) {
+            int row = ((r0 + rr) % height) * width;
+            for(int cc=0; cc<cols; cc++) {
+                field[row + (c0 + cc) % width] = value;
+            }
+        }
+    }
+
+    /**
+     * Stamp a shape given as rows of hex digits, scaled by {@code zoom},
+     * turned by {@code quarter_turns} and centred on (r0, c0), wrapping
+     * around the edges. Overlapping shapes keep the larger value.
+     */
+    static void stamp(double field[], int width, int height, String shape[], double zoom, int quarter_turns,
+                      int r0, int c0) {
+        int shape_h = shape.length;
+        int shape_w = shape[0].length();
+        int out_h = (int)Math.ceil(shape_h * zoom);
+        int out_w = (int)Math.ceil(shape_w * zoom);
+        boolean swap = (quarter_turns & 1) != 0;
+        int rows = swap ? out_w : out_h;
+        int cols = swap ? out_h : out_w;
+        for(int rr=0; rr<rows; rr++) {
+            int row = Math.floorMod(r0 - rows / 2 + rr, height) * width;
+            for(int cc=0; cc<cols; cc++) {
+                // Undo the turn to find the source cell
+                int y, x;
+                switch(quarter_turns & 3) {
+                    case 1: y = out_h - 1 - cc; x = rr; break;
+                    case 2: y = out_h - 1 - rr; x = out_w - 1 - cc; break;
+                    case 3: y = cc; x = out_w - 1 - rr; break;
+                    default: y = rr; x = cc; break;
+                }
+                int sy = Math.min((int)(y / zoom), shape_h - 1);
+                int sx = Math.min((int)(x / zoom), shape_w - 1);
+                double v = Character.digit(shape[sy].charAt(sx), 16) / 15.0;
+                int i = row + Math.floorMod(c0 - cols / 2 + cc, width);
+                field[i] = Math.max(field[i], v);
+            }
+        }
+    }
+
+    /** Square blocks of full intensity, the original starting pattern. */
+    static class Speckles extends SeedPattern {
+        Speckles() {
+            super(SPECKLES);
+        }
+
+        void draw(double field[], int width, int height, double inner_radius, Random random) {
+            double outer_radius = 3 * inner_radius;
+            int count = (int)(width * height / (outer_radius * 2) / (outer_radius * 2));
+            int size = (int)outer_radius;
+            for(int i=0; i<count; i++) {
+                fill_block(field, width, height, random.nextInt(height), random.nextInt(width), size, size, 1.0);
+            }
+        }
+    }
+
+    /** One glider, or a handful scattered about, each heading a random way. */
+    static class Gliders extends SeedPattern {
+        final boolean several;
+
+        Gliders(String name, boolean several) {
+            super(name);
+            this.several = several;
+        }
+
+        boolean lone_glider_expected() {
+            return !several;
+        }
+
+        void draw(double field[], int width, int height, double inner_radius, Random random) {
+            double zoom = inner_radius / REFERENCE_RADIUS;
+            int count = 1;
+            if(several) {
+                double spacing = 8 * 3 * inner_radius;
+                count = Math.max(2, (int)(width * height / (spacing * spacing)));
+            }
+            for(int i=0; i<count; i++) {
+                stamp(field, width, height, GLIDER_SHAPE, zoom, random.nextInt(4),
+                        random.nextInt(height), random.nextInt(width));
+            }
+        }
+    }
+
+    /**
+     * Uniform noise on a lattice one outer radius apart, bilinearly
+     * interpolated so there is nothing finer than the kernels can see.
+     * A finer lattice averages out to about 0.5 everywhere, which is past
+     * the death threshold. The lattice wraps, so the noise is seamless
+     * across the edges.
+     */
+    static class Noise extends SeedPattern {
+        Noise() {
+            super(NOISE);
+        }
+
+        void draw(double field[], int width, int height, double inner_radius, Random random) {
+            double spacing = 3 * inner_radius;
+            int lattice_w = Math.max(1, (int)Math.round(width / spacing));
+            int lattice_h = Math.max(1, (int)Math.round(height / spacing));
+            double lattice[] = new double[lattice_w * lattice_h];
+            for(int i=0; i<lattice.length; i++) {
+                lattice[i] = random.nextDouble();
+            }
+            for(int r=0; r<height; r++) {
+                double y = (double)r * lattice_h / height;
+                int y0 = (int)y;
+                int y1 = (y0 + 1) % lattice_h;
+                double fy = y - y0;
+                for(int c=0; c<width; c++) {
+                    double x = (double)c * lattice_w / width;
+                    int x0 = (int)x;
+                    int x1 = (x0 + 1) % lattice_w;
+                    double fx = x - x0;
+                    double top = lattice[y0 * lattice_w + x0] + fx * (lattice[y0 * lattice_w + x1] - lattice[y0 * lattice_w + x0]);
+                    double bottom = lattice[y1 * lattice_w + x0] + fx * (lattice[y1 * lattice_w + x1] - lattice[y1 * lattice_w + x0]);
+                    field[r * width + c] = top + fy * (bottom - top);
+                }
+            }
+        }
+    }
+}
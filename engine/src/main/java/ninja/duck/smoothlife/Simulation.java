@@ -0,0 +1,552 @@
+package ninja.duck.smoothlife;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * One SmoothLife grid and everything needed to step it: the rules table, the
+ * full-grid and sparse-window convolutions, the integrator and, optionally,
+ * the adaptive timestep controller.
+ * <p>
+ * The wallpaper and the headless renderer both drive this. Nothing here is
+ * thread safe; callers make sure only one thread steps or reconfigures it at
+ * a time. Only a {@link Rebuild} runs elsewhere.
+ */
+public class Simulation {
+    public static final int RESEED_NONE = 0;
+    /** The grid died out and was reseeded. */
+    public static final int RESEED_DEAD = 1;
+    /** A lone glider hung around too long and the grid was reseeded. */
+    public static final int RESEED_LONELY = 2;
+
+    /** Grid size or memory mode changed: new plans, kernels and buffers, field resampled. */
+    public static final int CHANGED_GRID = 1;
+    /** Inner radius changed: new kernel spectra on the existing plans. */
+    public static final int CHANGED_KERNELS = 2;
+    /** Switched between discrete and smooth timestepping: new rule table. */
+    public static final int CHANGED_RULES = 4;
+    /** Timestep, integrator or adaptivity changed: nothing to rebuild. */
+    public static final int CHANGED_STEPPING = 8;
+    /** Seed pattern changed: only matters at the next reseed. */
+    public static final int CHANGED_PATTERN = 16;
+    /** Planner flags changed: new plans for the same grid, kept only if they are faster. */
+    public static final int CHANGED_PLANS = 32;
+
+    /** Rounds of the A/B timing between old and new plans. */
+    static final int RACE_ROUNDS = 8;
+    /** Steps of n and m in the rule lookup table. */
+    static final int RULE_TABLE = 512;
+
+    /** Everything that decides how a simulation is built. */
+    public static class Config {
+        public int width;
+        public int height;
+        public double inner_radius = 7;
+        /** Timestep, or negative for discrete timestepping. */
+        public double dt = -1;
+        public String integrator = Integrator.EULER;
+        public boolean adaptive = false;
+        public String pattern = SeedPattern.SPECKLES;
+        /**
+         * FFTW planner flags for full-grid plans. Changing only this makes
+         * new plans, but they replace the old ones only if they are faster.
+         */
+        public int plan_flags;
+        /** In-place transforms and fewer buffers, see {@link MemoryBudget}. */
+        public boolean low_memory = false;
+
+        public Config copy() {
+            Config c = new Config();
+            c.width = width;
+            c.height = height;
+            c.inner_radius = inner_radius;
+            c.dt = dt;
+            c.integrator = integrator;
+            c.adaptive = adaptive;
+            c.pattern = pattern;
+            c.plan_flags = plan_flags;
+            c.low_memory = low_memory;
+            return c;
+        }
+
+        /** @return the {@code CHANGED_*} flags for everything that differs from {@code other} */
+        public int diff(Config other) {
+            int changed = 0;
+            if(width != other.width || height != other.height || low_memory != other.low_memory) {
+                changed |= CHANGED_GRID;
+            }
+            if(inner_radius != other.inner_radius) {
+                changed |= CHANGED_KERNELS;
+            }
+            if((dt < 0) != (other.dt < 0)) {
+                changed |= CHANGED_RULES;
+            }
+            if(dt != other.dt || !integrator.equals(other.integrator) || adaptive != other.adaptive) {
+                changed |= CHANGED_STEPPING;
+            }
+            if(!pattern.equals(other.pattern)) {
+                changed |= CHANGED_PATTERN;
+            }
+            if(plan_flags != other.plan_flags) {
+                changed |= CHANGED_PLANS;
+            }
+            return changed;
+        }
+    }
+
+    public int width;
+    public int height;
+    public double inner_radius;
+    public double outer_radius;
+    /** Timestep, or -1 for discrete timestepping. */
+    public double dt;
+    public Integrator integrator;
+    public double field[];
+
+    private Config config;
+    Rules rules;
+    TimestepController timestep = null;
+    private Convolver convolver;
+    private SparseStepper sparse;
+    private double n_buffer[];
+    private double m_buffer[];
+
+    SeedPattern pattern;
+    long seed = System.nanoTime();
+    int dead_count = 0;
+
+    /** Time the last step spent convolving, and in total. */
+    long step_fft_nanos = 0;
+    long step_nanos = 0;
+
+    /**
+     * Build the plans, kernels and rule table for {@code config}. The field
+     * starts empty, see {@link #reseed()}.
+     */
+    public Simulation(Config config) {
+        this.config = config.copy();
+        apply_stepping(this.config);
+        inner_radius = config.inner_radius;
+        outer_radius = 3 * inner_radius;
+        pattern = SeedPattern.get(config.pattern);
+        build_grid(config.width, config.height, config.plan_flags, config.low_memory);
+        rules = dt < 0 ? new Rules() : new SmoothTimestepRules();
+        rules.precalculate(RULE_TABLE);
+    }
+
+    public Config config() {
+        return config.copy();
+    }
+
+    /**
+     * Move to {@code new_config}, rebuilding only what it affects. The field
+     * carries on (resampled if the grid size changed) rather than being
+     * reseeded.
+     *
+     * @return the {@code CHANGED_*} flags for what was rebuilt or updated
+     */
+    public int reconfigure(Config new_config) {
+        Rebuild rebuild = prepare(new_config);
+        rebuild.run();
+        return apply(rebuild);
+    }
+
+    /**
+     * The expensive part of a reconfiguration: plans, kernel spectra and the
+     * rule table. {@link #run()} builds them without touching the running
+     * simulation, so it can happen on another thread while the old
+     * configuration keeps stepping. {@link Simulation#apply} then swaps them
+     * in between steps.
+     * <p>
+     * A rebuild that has been superseded should be cancelled. It stops at
+     * the next stage and frees whatever it already built.
+     */
+    public static class Rebuild implements Runnable {
+        final Config config;
+        final int changed;
+        /** Only used to borrow its forward plan for new kernel spectra. */
+        private final Convolver current;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile boolean cancelled = false;
+        private boolean done = false;
+
+        /** Time spent making plans, and the A/B timing for a plan upgrade. */
+        long plan_nanos = 0;
+        long old_nanos = 0;
+        long new_nanos = 0;
+
+        Convolver convolver;
+        double kernels[][];
+        Rules rules;
+
+        Rebuild(Config config, int changed, Convolver current) {
+            this.config = config;
+            this.changed = changed;
+            this.current = current;
+        }
+
+        public int changed() {
+            return changed;
+        }
+
+        /** Whether {@link #run()} has anything worth doing off the stepping thread. */
+        public boolean needs_build() {
+            return (changed & (CHANGED_GRID | CHANGED_KERNELS | CHANGED_RULES | CHANGED_PLANS)) != 0;
+        }
+
+        /** Nanoseconds spent making plans, 0 if none were made. */
+        public long plan_nanos() {
+            return plan_nanos;
+        }
+
+        /** Best transform time with the old and the new plans, 0 if they weren't compared. */
+        public long old_nanos() {
+            return old_nanos;
+        }
+
+        public long new_nanos() {
+            return new_nanos;
+        }
+
+        /** Whether new plans for the same grid won the A/B timing and will be swapped in. */
+        public boolean upgraded() {
+            return (changed & CHANGED_GRID) == 0 && convolver != null;
+        }
+
+        public boolean is_ready() {
+            return finished.getCount() == 0 && !cancelled;
+        }
+
+        public boolean is_cancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void run() {
+            try {
+                double inner_radius = config.inner_radius;
+                double outer_radius = 3 * inner_radius;
+                if(!cancelled && (changed & CHANGED_GRID) != 0) {
+                    long start = System.nanoTime();
+                    convolver = new Convolver(config.height, config.width, inner_radius, outer_radius,
+                            Convolver.logres(config.height, config.width), config.plan_flags, config.low_memory);
+                    plan_nanos = System.nanoTime() - start;
+                }
+                else {
+                    if(!cancelled && (changed & CHANGED_PLANS) != 0) {
+                        upgrade_plans();
+                    }
+                    if(!cancelled && (changed & CHANGED_KERNELS) != 0) {
+                        Convolver conv = convolver != null ? convolver : current;
+                        kernels = conv.spectra(inner_radius, outer_radius, Convolver.logres(conv.height, conv.width));
+                    }
+                }
+                if(!cancelled && (changed & CHANGED_RULES) != 0) {
+                    Rules new_rules = config.dt < 0 ? new Rules() : new SmoothTimestepRules();
+                    new_rules.precalculate(RULE_TABLE);
+                    rules = new_rules;
+                }
+            } finally {
+                synchronized(this) {
+                    done = true;
+                    if(cancelled) {
+                        release();
+                    }
+                }
+                finished.countDown();
+            }
+        }
+
+        private void upgrade_plans() {
+            long start = System.nanoTime();
+            Convolver replanned = current.replan(config.plan_flags);
+            plan_nanos = System.nanoTime() - start;
+            // The old plans are still stepping on the other thread, which
+            // slows both sides of the race about equally
+            long best[] = Convolver.race(current, replanned, RACE_ROUNDS);
+            old_nanos = best[0];
+            new_nanos = best[1];
+            if(new_nanos < old_nanos) {
+                convolver = replanned;
+            }
+            else {
+                replanned.destroy();
+            }
+        }
+
+        /** Give up on this rebuild. Safe to call from any thread, at any point. */
+        public synchronized void cancel() {
+            cancelled = true;
+            if(done) {
+                release();
+            }
+        }
+
+        /** Wait for {@link #run()} to return, e.g. before destroying the simulation it borrows from. */
+        public void await() {
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void release() {
+            if(convolver != null) {
+                convolver.destroy();
+                convolver = null;
+            }
+            kernels = null;
+            rules = null;
+        }
+    }
+
+    /**
+     * Work out what moving to {@code new_config} involves. Call on the
+     * thread that steps this simulation, then {@link Rebuild#run()} it
+     * anywhere and {@link #apply} it back on the stepping thread.
+     */
+    public Rebuild prepare(Config new_config) {
+        return new Rebuild(new_config.copy(), new_config.diff(config), convolver);
+    }
+
+    /**
+     * Swap in a finished rebuild. Must be the latest one prepared and must
+     * be called between steps.
+     *
+     * @return the {@code CHANGED_*} flags, or 0 if the rebuild was cancelled
+     */
+    public int apply(Rebuild rebuild) {
+        if(rebuild.is_cancelled()) {
+            return 0;
+        }
+        int changed = rebuild.changed;
+        config = rebuild.config;
+        int old_stages = stages();
+        if((changed & CHANGED_STEPPING) != 0) {
+            apply_stepping(config);
+        }
+        if((changed & CHANGED_KERNELS) != 0) {
+            inner_radius = config.inner_radius;
+            outer_radius = 3 * inner_radius;
+        }
+        if((changed & CHANGED_GRID) != 0) {
+            double old_field[] = field;
+            int old_width = width;
+            int old_height = height;
+            convolver.destroy();
+            convolver = rebuild.convolver;
+            sparse.destroy();
+            set_grid(config.width, config.height);
+            resample(old_field, old_width, old_height);
+        }
+        else {
+            if(rebuild.upgraded()) {
+                convolver.destroy();
+                convolver = rebuild.convolver;
+            }
+            if((changed & CHANGED_KERNELS) != 0) {
+                convolver.set_kernels(inner_radius, outer_radius, rebuild.kernels);
+                new_sparse();
+            }
+            else if(stages() != old_stages) {
+                // The sparse window padding depends on convolutions per step
+                new_sparse();
+            }
+        }
+        if((changed & CHANGED_RULES) != 0) {
+            rules = rebuild.rules;
+        }
+        if((changed & CHANGED_PATTERN) != 0) {
+            pattern = SeedPattern.get(config.pattern);
+        }
+        return changed;
+    }
+
+    private void apply_stepping(Config config) {
+        dt = config.dt < 0 ? -1 : config.dt;
+        if(integrator == null || !integrator.getName().equals(config.integrator)) {
+            integrator = Integrator.get(config.integrator);
+        }
+        if(config.adaptive && dt > 0) {
+            // The configured timestep is the starting point, the range is around it
+            timestep = new TimestepController(dt, dt / 4, Math.min(dt * 4, integrator.max_dt()));
+        }
+        else {
+            timestep = null;
+        }
+    }
+
+    private int stages() {
+        return dt < 0 ? 1 : integrator.stages();
+    }
+
+    private void build_grid(int width, int height, int plan_flags, boolean low_memory) {
+        convolver = new Convolver(height, width, inner_radius, outer_radius, Convolver.logres(height, width), plan_flags, low_memory);
+        set_grid(width, height);
+    }
+
+    private void set_grid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        sparse = new SparseStepper(height, width, inner_radius, outer_radius, Convolver.logres(height, width), stages());
+        field = new double[width * height];
+        n_buffer = new double[width * height];
+        m_buffer = new double[width * height];
+    }
+
+    private void new_sparse() {
+        sparse.destroy();
+        sparse = new SparseStepper(height, width, inner_radius, outer_radius, Convolver.logres(height, width), stages());
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    public void set_seed(long seed) {
+        this.seed = seed;
+    }
+
+    private final Integrator.Convolution convolution = new Integrator.Convolution() {
+        @Override
+        public void convolve(double f[], double n_out[], double m_out[]) {
+            long ctime = System.nanoTime();
+            if(!sparse.convolve(f, n_out, m_out)) {
+                convolver.convolve(f, n_out, m_out);
+            }
+            step_fft_nanos += System.nanoTime() - ctime;
+        }
+    };
+
+    public void step() {
+        long stime = System.nanoTime();
+        step_fft_nanos = 0;
+        if(dt < 0) {
+            convolution.convolve(field, n_buffer, m_buffer);
+            rules.s_fast(field, n_buffer, m_buffer, dt);
+        }
+        else if(timestep != null) {
+            double err = integrator.step(field, timestep.dt(), rules, convolution, n_buffer, m_buffer);
+            timestep.update(err, integrator.error_order());
+        }
+        else {
+            integrator.step(field, dt, rules, convolution, n_buffer, m_buffer);
+        }
+        step_nanos = System.nanoTime() - stime;
+    }
+
+    public long step_fft_nanos() {
+        return step_fft_nanos;
+    }
+
+    public long step_nanos() {
+        return step_nanos;
+    }
+
+    /**
+     * Reseed if the grid died out or a single glider has been around too
+     * long. The same pass finds the active region for the next sparse step,
+     * so call this after every step.
+     *
+     * @return {@link #RESEED_NONE}, {@link #RESEED_DEAD} or {@link #RESEED_LONELY}
+     */
+    public int check_dead() {
+        double sum = sparse.update_bounds(field);
+        if(sum < 10) {
+            reseed();
+            return RESEED_DEAD;
+        }
+        else if(sum < 900*inner_radius*inner_radius/49 && !pattern.lone_glider_expected()) {
+            // For an inner_radius of 7, a single glider has a sum around 800
+            // If we only have a single glider for a while, resize
+            dead_count ++;
+            if(dead_count > 100) {
+                reseed();
+                return RESEED_LONELY;
+            }
+        }
+        return RESEED_NONE;
+    }
+
+    /**
+     * Clear the field and draw the seed pattern. The pattern is drawn from
+     * the current seed, which then moves on, so a run started from a given
+     * seed always reseeds the same way.
+     */
+    public void reseed() {
+        Random random = new Random(seed);
+        seed = random.nextLong();
+        pattern.apply(field, width, height, inner_radius, random);
+        dead_count = 0;
+        sparse.invalidate();
+    }
+
+    /** Fill the field from another grid, nearest neighbour. */
+    public void resample(double old_field[], int old_width, int old_height) {
+        for(int r=0; r<height; r++) {
+            int old_r = r * old_height / height;
+            for(int c=0; c<width; c++) {
+                int old_c = c * old_width / width;
+                field[r * width + c] = old_field[old_r * old_width + old_c];
+            }
+        }
+        dead_count = 0;
+        sparse.invalidate();
+    }
+
+    /** Quantize {@code src}, this grid's field or a settled copy of it, for checkpointing. */
+    public Snapshot capture(double src[]) {
+        return Snapshot.capture(src, width, height, inner_radius, outer_radius, dt, integrator.getName(), seed, dead_count);
+    }
+
+    /**
+     * Continue from a checkpoint if it was taken with a compatible
+     * configuration, resampling it if the grid size changed.
+     *
+     * @return false if the snapshot doesn't fit this configuration
+     */
+    public boolean restore(Snapshot snap) {
+        if(snap.inner_radius != inner_radius || (snap.dt < 0) != (dt < 0)) {
+            return false;
+        }
+        if(snap.width == width && snap.height == height) {
+            System.arraycopy(snap.field, 0, field, 0, field.length);
+        }
+        else {
+            resample(snap.field, snap.width, snap.height);
+        }
+        seed = snap.seed;
+        dead_count = snap.dead_count;
+        sparse.invalidate();
+        return true;
+    }
+
+    public String description() {
+        String grid = sparse.window_width > 0 ? "window " + sparse.window_width + "x" + sparse.window_height : "full";
+        return "fftw r2c f64 " + grid + ", " + (dt < 0 ? "discrete" : integrator.getName() + " " + dt_description());
+    }
+
+    public String dt_description() {
+        if(timestep == null) {
+            return "dt=" + dt;
+        }
+        return String.format(Locale.US, "dt=%.3f [%.3f-%.3f]",
+                timestep.dt(), timestep.history_min(), timestep.history_max());
+    }
+
+    /** Mean adaptive timestep over the recent history, or the fixed one. */
+    public double mean_dt() {
+        return timestep != null ? timestep.history_mean() : dt;
+    }
+
+    public boolean is_adaptive() {
+        return timestep != null;
+    }
+
+    public void destroy() {
+        convolver.destroy();
+        sparse.destroy();
+    }
+}
@@ -0,0 +1,67 @@
+package ninja.duck.smoothlife;
+
+/**
+ * Transition function for smooth timestepping. The lookup table holds the
+ * target value and the field relaxes towards it by {@code dt} each step.
+ */
+public class SmoothTimestepRules extends Rules {
+    double B1 = 0.254f;
+    double B2 = 0.340f;
+    double D1 = 0.312f;
+    double D2 = 0.518f;
+//
+//            double N = 0.028f;
+//            double M = 0.147f;
+//
+//            double lookup[][];
+//            int precalc_len;
+
+    double hard(double x, double a) {
+        return x > a ? 1.0f : 0.0f;
+    }
+
+    double sigma(double x, double a, double alpha) {
+        return x * (1.0 - hard(alpha, 0.5)) + a * hard(alpha, 0.5);
+    }
+
+    double linear(double x, double a, double ea) {
+        double val = (x - a) / ea + 0.5;
+        return  Math.min(Math.max(val, 0.0), 1.0);
+    }
+
+    double sigma2(double x, double a, double b) {
+        return linear(x, a, N) * (1.0 - linear(x, b, N));
+    }
+
+    double s(double n, double m) {
+        return sigma(sigma2(n, B1, D1), sigma2(n, B2, D2), m);
+    }
+
+    void s_fast(double dest[], double n_arr[], double m_arr[], double dt) {
+        double change = 0.0;
+        int active = 0;
+        for(int i=0; i<n_arr.length; i++) {
+            int n_ind = (int)(n_arr[i] * precalc_len + 0.5);
+            int m_ind = (int)(m_arr[i] * precalc_len + 0.5);
+            // Constrain just in case
+            if(n_ind >= precalc_len) n_ind = precalc_len - 1;
+            if(n_ind < 0) n_ind = 0;
+            if(m_ind >= precalc_len) m_ind = precalc_len - 1;
+            if(m_ind < 0) m_ind = 0;
+
+            double s = lookup[n_ind][m_ind];
+//                    double m = m_arr[i];
+            double f = dest[i];
+            double v =  f + dt * (s - f);
+            v = Math.min(Math.max(v, 0.0), 1.0);
+            double d = v - f;
+            if(Math.abs(d) > ACTIVE_EPS) {
+                change += d * d;
+                active++;
+            }
+            dest[i] = v;
+
+        }
+        rms_change = active_rms(change, active);
+    }
+}
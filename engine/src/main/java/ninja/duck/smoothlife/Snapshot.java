@@ -0,0 +1,247 @@
+package ninja.duck.smoothlife;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Checkpoint of the simulation state so a pattern survives the surface
+ * going away instead of restarting from noise.
+ * <p>
+ * The field is quantized to 16 bits, delta coded along the grid (it is
+ * smooth, so the deltas are mostly tiny) and deflated. The file is a small
+ * header with the configuration and a CRC of the payload, written through a
+ * memory map into a temporary file and renamed over the old checkpoint, so a
+ * crash mid-write leaves the previous one intact. Writing happens on a
+ * single background thread; only the quantization runs on the caller.
+ */
+public class Snapshot {
+    static final int MAGIC = 0x534c534e; // "SLSN"
+    static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // Deflate can't do better than about 1032:1
+    private static final int MAX_DEFLATE_RATIO = 1100;
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "SnapshotWriter");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    public int width;
+    public int height;
+    public double inner_radius;
+    public double outer_radius;
+    /** Timestep, or -1 for discrete timestepping. */
+    public double dt;
+    public String integrator;
+    public long seed;
+    public int dead_count;
+    /** Restored field. Only set by {@link #read}. */
+    public double field[];
+
+    private char quantized[];
+
+    /** Quantize {@code field} now so the caller can keep stepping it. */
+    public static Snapshot capture(double field[], int width, int height, double inner_radius, double outer_radius,
+                                   double dt, String integrator, long seed, int dead_count) {
+        Snapshot snap = new Snapshot();
+        snap.width = width;
+        snap.height = height;
+        snap.inner_radius = inner_radius;
+        snap.outer_radius = outer_radius;
+        snap.dt = dt;
+        snap.integrator = integrator;
+        snap.seed = seed;
+        snap.dead_count = dead_count;
+        snap.quantized = new char[width * height];
+        char prev = 0;
+        for(int i=0; i<width*height; i++) {
+            double v = Math.min(Math.max(field[i], 0.0), 1.0);
+            char q = (char)(v * 65535 + 0.5);
+            snap.quantized[i] = (char)(q - prev);
+            prev = q;
+        }
+        return snap;
+    }
+
+    /** Queue a write of this snapshot on the background writer. */
+    public void write_async(final File file) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    public void write(File file) throws IOException {
+        ByteBuffer raw = ByteBuffer.allocate(quantized.length * 2);
+        raw.asCharBuffer().put(quantized);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw.array());
+        deflater.finish();
+        byte compressed[] = new byte[raw.capacity() + 64];
+        int compressed_len = 0;
+        while(!deflater.finished()) {
+            if(compressed_len == compressed.length) {
+                byte bigger[] = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, bigger, 0, compressed_len);
+                compressed = bigger;
+            }
+            compressed_len += deflater.deflate(compressed, compressed_len, compressed.length - compressed_len);
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(compressed, 0, compressed_len);
+
+        byte name[] = integrator.getBytes(UTF8);
+        int header = 4 * 4 + 8 * 3 + 8 + 4 + 2 + name.length + 4 + 8;
+        File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        try {
+            raf.setLength(header + compressed_len);
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, header + compressed_len);
+            buf.putInt(MAGIC);
+            buf.putInt(VERSION);
+            buf.putInt(width);
+            buf.putInt(height);
+            buf.putDouble(inner_radius);
+            buf.putDouble(outer_radius);
+            buf.putDouble(dt);
+            buf.putLong(seed);
+            buf.putInt(dead_count);
+            buf.putShort((short)name.length);
+            buf.put(name);
+            buf.putInt(compressed_len);
+            buf.putLong(crc.getValue());
+            buf.put(compressed, 0, compressed_len);
+            buf.force();
+        } finally {
+            raf.close();
+        }
+        if(!tmp.renameTo(file)) {
+            throw new IOException("Could not move snapshot into place");
+        }
+    }
+
+    /**
+     * Read a snapshot written by {@link #write}.
+     *
+     * @return the snapshot, or null if the file is missing or from another
+     *         version
+     * @throws IOException if it can't be read or is damaged
+     */
+    public static Snapshot read(File file) throws IOException {
+        if(!file.exists()) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buf.remaining() < 8 || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                return null;
+            }
+            return read(buf);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            // Sizes are checked as they're read, but don't trust that to be complete
+            throw new IOException("Damaged snapshot", e);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** The rest of a snapshot, after the magic and version. */
+    private static Snapshot read(ByteBuffer buf) throws IOException {
+        if(buf.remaining() < 4 * 2 + 8 * 3 + 8 + 4 + 2) {
+            throw new IOException("Damaged snapshot: header cut short");
+        }
+        Snapshot snap = new Snapshot();
+        snap.width = buf.getInt();
+        snap.height = buf.getInt();
+        snap.inner_radius = buf.getDouble();
+        snap.outer_radius = buf.getDouble();
+        snap.dt = buf.getDouble();
+        snap.seed = buf.getLong();
+        snap.dead_count = buf.getInt();
+        int name_len = buf.getShort();
+        if(name_len < 0 || name_len + 4 + 8 > buf.remaining()) {
+            throw new IOException("Damaged snapshot: bad integrator name length " + name_len);
+        }
+        byte name[] = new byte[name_len];
+        buf.get(name);
+        snap.integrator = new String(name, UTF8);
+        int compressed_len = buf.getInt();
+        long expected_crc = buf.getLong();
+        if(compressed_len < 0 || compressed_len > buf.remaining()) {
+            throw new IOException("Damaged snapshot: payload of " + compressed_len + " bytes with "
+                    + buf.remaining() + " left");
+        }
+        // The CRC doesn't cover the header, so check the grid could really
+        // have deflated to this before allocating for it
+        long raw_len = 2L * snap.width * snap.height;
+        if(snap.width <= 0 || snap.height <= 0 || raw_len > Integer.MAX_VALUE
+                || raw_len > (long)compressed_len * MAX_DEFLATE_RATIO) {
+            throw new IOException("Damaged snapshot: bad grid " + snap.width + "x" + snap.height);
+        }
+        byte compressed[] = new byte[compressed_len];
+        buf.get(compressed);
+        CRC32 crc = new CRC32();
+        crc.update(compressed, 0, compressed_len);
+        if(crc.getValue() != expected_crc) {
+            throw new IOException("Damaged snapshot: CRC mismatch");
+        }
+
+        int size = snap.width * snap.height;
+        byte raw[] = new byte[size * 2];
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        try {
+            int n = 0;
+            while(n < raw.length && !inflater.finished()) {
+                int got = inflater.inflate(raw, n, raw.length - n);
+                if(got == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += got;
+            }
+            if(n != raw.length) {
+                throw new IOException("Damaged snapshot: field cut short");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Damaged snapshot", e);
+        } finally {
+            inflater.end();
+        }
+
+        snap.field = new double[size];
+        ByteBuffer deltas = ByteBuffer.wrap(raw);
+        char q = 0;
+        for(int i=0; i<size; i++) {
+            q += deltas.getChar();
+            snap.field[i] = q / 65535.0;
+        }
+        return snap;
+    }
+}
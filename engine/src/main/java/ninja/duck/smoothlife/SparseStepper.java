@@ -0,0 +1,242 @@
+package ninja.duck.smoothlife;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Convolves only the active part of the torus when most of it is empty.
+ * <p>
+ * After each step {@link #update_bounds} finds the smallest (possibly
+ * wrapping) band of rows and of columns holding every cell above
+ * {@link #ACTIVE_EPS}. On the next step that box is padded by the kernel
+ * reach and, if the padded window is much smaller than the grid, cut out,
+ * convolved with plans sized for the window and scattered back. Cells
+ * outside the window are further than the outer radius from anything alive,
+ * so their neighbourhood averages are zero to well within the rule table's
+ * resolution and the step matches a full-grid step.
+ * <p>
+ * Window sizes are rounded up to {@link #ROUND} so the few plans kept in
+ * the cache get reused as gliders drift around. The cache is limited by
+ * count and by the total area of its windows, so {@link MemoryBudget} can
+ * bound it.
+ */
+public class SparseStepper {
+    static final double ACTIVE_EPS = 1e-6;
+    static final double MAX_AREA_FRACTION = 0.35;
+    static final int ROUND = 32;
+    static final int CACHE_SIZE = 4;
+    /** Most the cached windows may add up to, as a fraction of the grid. */
+    static final double MAX_CACHE_AREA = 2 * MAX_AREA_FRACTION;
+
+    final int height;
+    final int width;
+    final double inner_r;
+    final double outer_r;
+    final double logres;
+    final int pad;
+
+    private final boolean row_active[];
+    private final boolean col_active[];
+    private boolean bounds_valid = false;
+    private int box_r0, box_rows, box_c0, box_cols;
+
+    private double win_field[] = new double[0];
+    private double win_n[] = new double[0];
+    private double win_m[] = new double[0];
+
+    int window_height = 0;
+    int window_width = 0;
+    int windowed_steps = 0;
+    int full_steps = 0;
+
+    private final LinkedHashMap<Long, Convolver> cache = new LinkedHashMap<>(CACHE_SIZE + 1, 0.75f, true);
+    long cache_cells = 0;
+
+    /**
+     * @param stages convolutions per step. Each one can spread activity by
+     *               another kernel reach, so the window is padded for all of them.
+     */
+    public SparseStepper(int height, int width, double inner_r, double outer_r, double logres, int stages) {
+        this.height = height;
+        this.width = width;
+        this.inner_r = inner_r;
+        this.outer_r = outer_r;
+        this.logres = logres;
+        // The logistic kernel edge is a couple of cells wide
+        pad = stages * ((int)Math.ceil(outer_r) + 3);
+        row_active = new boolean[height];
+        col_active = new boolean[width];
+    }
+
+    /** Forget the bounds, e.g. after the field was reseeded. */
+    public void invalidate() {
+        bounds_valid = false;
+    }
+
+    /**
+     * Recompute the active box from {@code field}.
+     *
+     * @return the sum of the field, which the caller needs anyway
+     */
+    public double update_bounds(double field[]) {
+        Arrays.fill(row_active, false);
+        Arrays.fill(col_active, false);
+        double sum = 0.0;
+        for(int r=0; r<height; r++) {
+            int row = r * width;
+            boolean any = false;
+            for(int c=0; c<width; c++) {
+                double v = field[row + c];
+                sum += v;
+                if(v > ACTIVE_EPS) {
+                    col_active[c] = true;
+                    any = true;
+                }
+            }
+            row_active[r] = any;
+        }
+
+        int rows[] = covering_arc(row_active);
+        int cols[] = covering_arc(col_active);
+        box_r0 = rows[0];
+        box_rows = rows[1];
+        box_c0 = cols[0];
+        box_cols = cols[1];
+        bounds_valid = true;
+        return sum;
+    }
+
+    /**
+     * Smallest circular run covering every set flag, as {start, length}.
+     * Found as the complement of the longest circular run of clear flags.
+     */
+    static int[] covering_arc(boolean flags[]) {
+        int len = flags.length;
+        int first_set = -1;
+        for(int i=0; i<len; i++) {
+            if(flags[i]) {
+                first_set = i;
+                break;
+            }
+        }
+        if(first_set < 0) {
+            return new int[]{0, 0};
+        }
+        int best_gap_start = 0;
+        int best_gap_len = 0;
+        int gap_len = 0;
+        // Walk one lap starting just after a set flag so gaps that wrap are seen whole
+        for(int k=1; k<=len; k++) {
+            int i = (first_set + k) % len;
+            if(!flags[i]) {
+                gap_len++;
+            }
+            else {
+                if(gap_len > best_gap_len) {
+                    best_gap_len = gap_len;
+                    best_gap_start = (i - gap_len + len) % len;
+                }
+                gap_len = 0;
+            }
+        }
+        return new int[]{(best_gap_start + best_gap_len) % len, len - best_gap_len};
+    }
+
+    /**
+     * Convolve just the padded active window if that is worth it. Every
+     * convolution within one step uses the bounds from the start of the step.
+     *
+     * @return false if the caller should do a full-grid convolution instead
+     */
+    public boolean convolve(double field[], double n_buffer[], double m_buffer[]) {
+        window_height = 0;
+        window_width = 0;
+        if(!bounds_valid || box_rows == 0) {
+            full_steps++;
+            return false;
+        }
+        int wh = round_up(box_rows + 2 * pad);
+        int ww = round_up(box_cols + 2 * pad);
+        if(wh > height || ww > width || (double)wh * ww > MAX_AREA_FRACTION * height * width) {
+            full_steps++;
+            return false;
+        }
+
+        Convolver conv = get_convolver(wh, ww);
+        if(conv == null) {
+            full_steps++;
+            return false;
+        }
+        int wsize = wh * ww;
+        if(win_field.length < wsize) {
+            win_field = new double[wsize];
+            win_n = new double[wsize];
+            win_m = new double[wsize];
+        }
+
+        int r0 = box_r0 - pad + height;
+        int c0 = box_c0 - pad + width;
+        for(int r=0; r<wh; r++) {
+            int row = ((r0 + r) % height) * width;
+            for(int c=0; c<ww; c++) {
+                win_field[r * ww + c] = field[row + (c0 + c) % width];
+            }
+        }
+
+        conv.convolve(win_field, win_n, win_m);
+
+        Arrays.fill(n_buffer, 0.0);
+        Arrays.fill(m_buffer, 0.0);
+        for(int r=0; r<wh; r++) {
+            int row = ((r0 + r) % height) * width;
+            for(int c=0; c<ww; c++) {
+                int i = row + (c0 + c) % width;
+                n_buffer[i] = win_n[r * ww + c];
+                m_buffer[i] = win_m[r * ww + c];
+            }
+        }
+        window_height = wh;
+        window_width = ww;
+        windowed_steps++;
+        return true;
+    }
+
+    private static int round_up(int n) {
+        return (n + ROUND - 1) / ROUND * ROUND;
+    }
+
+    private Convolver get_convolver(int wh, int ww) {
+        long key = ((long)wh << 32) | ww;
+        Convolver conv = cache.get(key);
+        if(conv == null) {
+            // Estimated plans: measuring here would stall the frame. Null if
+            // a rebuild is planning in the background, don't wait for it.
+            conv = Convolver.try_estimated(wh, ww, inner_r, outer_r, logres);
+            if(conv == null) {
+                return null;
+            }
+            cache.put(key, conv);
+            cache_cells += (long)wh * ww;
+            // Least recently used first. A single window is never more than
+            // MAX_CACHE_AREA, so the new one is never evicted.
+            Iterator<Map.Entry<Long, Convolver>> it = cache.entrySet().iterator();
+            while(cache.size() > CACHE_SIZE || cache_cells > MAX_CACHE_AREA * height * width) {
+                Convolver old = it.next().getValue();
+                cache_cells -= (long)old.height * old.width;
+                old.destroy();
+                it.remove();
+            }
+        }
+        return conv;
+    }
+
+    public void destroy() {
+        for(Convolver conv : cache.values()) {
+            conv.destroy();
+        }
+        cache.clear();
+        cache_cells = 0;
+    }
+}
@@ -0,0 +1,112 @@
+package ninja.duck.smoothlife;
+
+/**
+ * Grows or shrinks the smooth timestep from a per-step error estimate.
+ * <p>
+ * Integrators report either an embedded error estimate (order 2, Heun
+ * against its Euler predictor) or just the RMS change of the field during
+ * the step (order 1). RMS rather than max because cells crossing a rule
+ * threshold jump by about dt whatever dt is, which would pin a max-norm
+ * estimate to the lower bound. The RMS is over the cells that moved, not the
+ * whole grid, so the tolerances mean the same at every grid size and however
+ * much of it is empty. The next dt is scaled by
+ * {@code SAFETY * (tol / err)^(1/order)}, limited to a factor between
+ * {@link #MIN_FACTOR} and {@link #MAX_FACTOR} per step and to
+ * [dt_min, dt_max]. Steps are never rejected and redone. The next step just
+ * gets a smaller dt, which is fine for something that only has to look
+ * right.
+ * <p>
+ * The last {@link #HISTORY} values of dt are kept for instrumentation.
+ */
+public class TimestepController {
+    public static final int HISTORY = 256;
+    static final double SAFETY = 0.9;
+    static final double MIN_FACTOR = 0.5;
+    static final double MAX_FACTOR = 1.5;
+    /** RMS change of the active cells per step, for order 1 estimates. */
+    static final double CHANGE_TOLERANCE = 0.05;
+    /** Embedded local error, for order 2 estimates. */
+    static final double EMBEDDED_TOLERANCE = 0.01;
+
+    private double dt;
+    private final double dt_min;
+    private final double dt_max;
+    private final double history[] = new double[HISTORY];
+    private int index = 0;
+    private int count = 0;
+
+    public TimestepController(double dt, double dt_min, double dt_max) {
+        this.dt_min = dt_min;
+        this.dt_max = Math.max(dt_max, dt_min);
+        this.dt = Math.min(Math.max(dt, this.dt_min), this.dt_max);
+    }
+
+    /** The timestep to use for the next step. */
+    public double dt() {
+        return dt;
+    }
+
+    /**
+     * Record the error of the step just taken with {@link #dt()} and pick the
+     * next timestep.
+     *
+     * @param err the integrator's error estimate
+     * @param order 2 for embedded estimates, 1 for RMS change estimates
+     * @return the new timestep
+     */
+    public double update(double err, int order) {
+        history[index] = dt;
+        index = (index + 1) % HISTORY;
+        if(count < HISTORY) count++;
+
+        double tol = order >= 2 ? EMBEDDED_TOLERANCE : CHANGE_TOLERANCE;
+        double factor;
+        if(err <= 0.0) {
+            factor = MAX_FACTOR;
+        }
+        else {
+            factor = SAFETY * Math.pow(tol / err, 1.0 / order);
+            factor = Math.min(Math.max(factor, MIN_FACTOR), MAX_FACTOR);
+        }
+        dt = Math.min(Math.max(dt * factor, dt_min), dt_max);
+        return dt;
+    }
+
+    public int history_count() {
+        return count;
+    }
+
+    /** Copy of the recorded timesteps, oldest first. */
+    public double[] history() {
+        double out[] = new double[count];
+        for(int i=0; i<count; i++) {
+            out[i] = history[(index - count + i + HISTORY) % HISTORY];
+        }
+        return out;
+    }
+
+    public double history_min() {
+        double min = dt;
+        for(int i=0; i<count; i++) {
+            min = Math.min(min, history[i]);
+        }
+        return min;
+    }
+
+    public double history_max() {
+        double max = dt;
+        for(int i=0; i<count; i++) {
+            max = Math.max(max, history[i]);
+        }
+        return max;
+    }
+
+    public double history_mean() {
+        if(count == 0) return dt;
+        double sum = 0;
+        for(int i=0; i<count; i++) {
+            sum += history[i];
+        }
+        return sum / count;
+    }
+}
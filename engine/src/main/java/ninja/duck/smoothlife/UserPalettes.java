@@ -0,0 +1,470 @@
+package ninja.duck.smoothlife;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Colormaps from palette files the user supplies.
+ * <p>
+ * A palette is a list of stops, each a position from 0 to 1 and a color,
+ * either as CSV lines ({@code position,#rrggbb} or {@code position,r,g,b}
+ * with 0-255 channels) or as JSON: an array of {@code [position, color]}
+ * pairs or {@code {"position": p, "color": c}} objects, optionally wrapped
+ * as {@code {"stops": [...]}}, where a color is {@code "#rrggbb"} or
+ * {@code [r, g, b]}. Positions must be in order; repeating one makes a hard
+ * edge. The map is named after the file.
+ * <p>
+ * A valid palette is compiled into the evenly sampled table every map
+ * colors with, so any number of stops costs the same as a built-in map.
+ * The table is cached as a {@link ColorMapPack} keyed on the file's size and
+ * modification time, and later loads memory-map that instead of parsing.
+ */
+public class UserPalettes {
+    static final int MAX_STOPS = 4096;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** What {@link #load} found. */
+    public static class Result {
+        public final List<String> names = new ArrayList<>();
+        /** One message per palette file that couldn't be used. */
+        public final List<String> errors = new ArrayList<>();
+        /** Palettes that had to be parsed rather than read from the cache. */
+        public int compiled = 0;
+    }
+
+    /**
+     * Register every palette in {@code dir} with {@link ColorMap}, caching
+     * compiled tables in {@code cache_dir} if it isn't null.
+     */
+    public static Result load(File dir, File cache_dir) {
+        Result result = new Result();
+        File files[] = dir.listFiles();
+        if(files == null) {
+            return result;
+        }
+        for(File file : files) {
+            if(!is_palette(file.getName())) {
+                continue;
+            }
+            try {
+                File cached = cache_dir == null ? null : cache_file(cache_dir, file);
+                ColorMap map = cached != null && cached.exists() ? read_cached(cached) : null;
+                if(map == null) {
+                    map = compile(file);
+                    result.compiled++;
+                    if(cache_dir != null) {
+                        write_cached(cache_dir, cached, map);
+                    }
+                }
+                ColorMap.register(map);
+                result.names.add(map.name);
+            } catch (IOException | IllegalArgumentException e) {
+                result.errors.add(file.getName() + ": " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copy a palette from {@code in} into {@code dir} as {@code file_name},
+     * but only once it compiles. The copy is checked in a scratch directory
+     * and renamed into place, so a bad file never replaces or removes a good
+     * palette of the same name.
+     *
+     * @throws IllegalArgumentException describing what is wrong with it
+     */
+    public static ColorMap install(InputStream in, File dir, String file_name) throws IOException {
+        // Inside dir so the rename stays on one filesystem. load() skips it.
+        File scratch = new File(dir, ".import");
+        if(!scratch.isDirectory() && !scratch.mkdirs()) {
+            throw new IOException("Could not make " + scratch);
+        }
+        File tmp = new File(scratch, file_name);
+        try {
+            try(OutputStream out = new FileOutputStream(tmp)) {
+                byte buf[] = new byte[8192];
+                int n;
+                while((n = in.read(buf)) > 0) {
+                    out.write(buf, 0, n);
+                }
+            }
+            ColorMap map = compile(tmp);
+            if(!tmp.renameTo(new File(dir, file_name))) {
+                throw new IOException("Could not move " + file_name + " into place");
+            }
+            return map;
+        } finally {
+            // Only still there if something went wrong
+            tmp.delete();
+        }
+    }
+
+    /** Whether {@code file_name} looks like a palette file. */
+    public static boolean is_palette(String file_name) {
+        String lower = file_name.toLowerCase(Locale.US);
+        return lower.endsWith(".csv") || lower.endsWith(".json");
+    }
+
+    /** The map name for a palette file, its name without the extension. */
+    public static String name_of(String file_name) {
+        int dot = file_name.lastIndexOf('.');
+        return (dot > 0 ? file_name.substring(0, dot) : file_name).toLowerCase(Locale.US);
+    }
+
+    /**
+     * Parse and validate a palette file into a compiled map.
+     *
+     * @throws IllegalArgumentException describing what is wrong with it
+     */
+    public static ColorMap compile(File file) throws IOException {
+        String name = name_of(file.getName());
+        if(ColorMap.isBuiltIn(name)) {
+            throw new IllegalArgumentException("name clashes with the built-in " + name);
+        }
+        String text = new String(read_bytes(file), UTF8);
+        List<double[]> stops = file.getName().toLowerCase(Locale.US).endsWith(".json") ? parse_json(text) : parse_csv(text);
+        return compile(name, stops);
+    }
+
+    /** The whole of {@code file}. Not java.nio.file, which Android only has from API 26. */
+    private static byte[] read_bytes(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int)Math.min(file.length(), 1 << 20));
+        try(InputStream in = new FileInputStream(file)) {
+            byte buf[] = new byte[8192];
+            int n;
+            while((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Compile {@code stops} of {position, argb} into a map with an evenly sampled table. */
+    static ColorMap compile(String name, List<double[]> stops) {
+        if(stops.size() < 2) {
+            throw new IllegalArgumentException("needs at least two stops");
+        }
+        if(stops.size() > MAX_STOPS) {
+            throw new IllegalArgumentException("more than " + MAX_STOPS + " stops");
+        }
+        List<double[]> padded = new ArrayList<>(stops);
+        double last = 0;
+        for(int i=0; i<stops.size(); i++) {
+            double position = stops.get(i)[0];
+            if(!(position >= 0 && position <= 1)) {
+                throw new IllegalArgumentException("stop " + (i + 1) + " is not between 0 and 1");
+            }
+            if(position < last) {
+                throw new IllegalArgumentException("stop " + (i + 1) + " is before the one above it");
+            }
+            last = position;
+        }
+        // Hold the end colors out to 0 and 1
+        if(padded.get(0)[0] > 0) {
+            padded.add(0, new double[]{0, padded.get(0)[1]});
+        }
+        if(last < 1) {
+            padded.add(new double[]{1, padded.get(padded.size() - 1)[1]});
+        }
+        int colors[] = new int[padded.size()];
+        double alphas[] = new double[padded.size()];
+        for(int i=0; i<colors.length; i++) {
+            alphas[i] = padded.get(i)[0];
+            colors[i] = (int)(long)padded.get(i)[1];
+        }
+        ColorMap stepped = new ColorMap(name, colors, alphas, 0xFF000000, 0xFF888888);
+        return sampled(stepped);
+    }
+
+    /** A map whose colors are {@code map}'s table, which samples to the same table again. */
+    static ColorMap sampled(ColorMap map) {
+        int colors[] = new int[ColorMap.LUT_SIZE];
+        double alphas[] = new double[ColorMap.LUT_SIZE];
+        for(int i=0; i<colors.length; i++) {
+            colors[i] = map.lut[i + 1];
+            alphas[i] = (double)i / (ColorMap.LUT_SIZE - 1);
+        }
+        return new ColorMap(map.name, colors, alphas, map.missingColor, map.notApplicableColor);
+    }
+
+    static List<double[]> parse_csv(String text) {
+        List<double[]> stops = new ArrayList<>();
+        String lines[] = text.split("\r?\n");
+        for(int l=0; l<lines.length; l++) {
+            String line = lines[l].trim();
+            if(line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String fields[] = line.split("\\s*[,;\\t]\\s*");
+            double position;
+            try {
+                position = Double.parseDouble(fields[0]);
+            } catch (NumberFormatException e) {
+                if(stops.isEmpty()) {
+                    // A header
+                    continue;
+                }
+                throw new IllegalArgumentException("line " + (l + 1) + ": bad position " + fields[0]);
+            }
+            try {
+                if(fields.length == 2) {
+                    stops.add(new double[]{position, hex_color(fields[1])});
+                }
+                else if(fields.length == 4) {
+                    stops.add(new double[]{position, rgb(Double.parseDouble(fields[1]),
+                            Double.parseDouble(fields[2]), Double.parseDouble(fields[3]))});
+                }
+                else {
+                    throw new IllegalArgumentException("expected position,#rrggbb or position,r,g,b");
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + (l + 1) + ": " + e.getMessage());
+            }
+        }
+        return stops;
+    }
+
+    static List<double[]> parse_json(String text) {
+        Object root = new Json(text).document();
+        if(root instanceof Map) {
+            root = ((Map<?, ?>)root).get("stops");
+        }
+        if(!(root instanceof List)) {
+            throw new IllegalArgumentException("expected a list of stops");
+        }
+        List<double[]> stops = new ArrayList<>();
+        for(Object stop : (List<?>)root) {
+            Object position;
+            Object color;
+            if(stop instanceof List && ((List<?>)stop).size() == 2) {
+                position = ((List<?>)stop).get(0);
+                color = ((List<?>)stop).get(1);
+            }
+            else if(stop instanceof Map) {
+                position = ((Map<?, ?>)stop).get("position");
+                color = ((Map<?, ?>)stop).get("color");
+            }
+            else {
+                throw new IllegalArgumentException("stop " + (stops.size() + 1) + " is not [position, color]");
+            }
+            if(!(position instanceof Double)) {
+                throw new IllegalArgumentException("stop " + (stops.size() + 1) + " has no numeric position");
+            }
+            stops.add(new double[]{(Double)position, json_color(color)});
+        }
+        return stops;
+    }
+
+    private static double json_color(Object color) {
+        if(color instanceof String) {
+            return hex_color((String)color);
+        }
+        if(color instanceof List && ((List<?>)color).size() == 3) {
+            List<?> c = (List<?>)color;
+            if(c.get(0) instanceof Double && c.get(1) instanceof Double && c.get(2) instanceof Double) {
+                return rgb((Double)c.get(0), (Double)c.get(1), (Double)c.get(2));
+            }
+        }
+        throw new IllegalArgumentException("colors are \"#rrggbb\" or [r, g, b]");
+    }
+
+    private static double hex_color(String s) {
+        if(!s.matches("#?[0-9a-fA-F]{6}")) {
+            throw new IllegalArgumentException("bad color " + s);
+        }
+        return 0xFF000000L | Long.parseLong(s.startsWith("#") ? s.substring(1) : s, 16);
+    }
+
+    private static double rgb(double r, double g, double b) {
+        for(double v : new double[]{r, g, b}) {
+            if(!(v >= 0 && v <= 255)) {
+                throw new IllegalArgumentException("channels go from 0 to 255");
+            }
+        }
+        return 0xFF000000L | (long)r << 16 | (long)g << 8 | (long)b;
+    }
+
+    private static File cache_file(File cache_dir, File file) {
+        return new File(cache_dir, name_of(file.getName()) + "-" + Long.toHexString(file.length())
+                + "-" + Long.toHexString(file.lastModified()) + ".bin");
+    }
+
+    /**
+     * The palette name in a cache file name, {@code <name>-<size>-<mtime>.bin},
+     * or null if it isn't one. Names may contain dashes themselves.
+     */
+    static String cached_name(String cache_name) {
+        if(!cache_name.endsWith(".bin")) {
+            return null;
+        }
+        String key = cache_name.substring(0, cache_name.length() - ".bin".length());
+        int mtime = key.lastIndexOf('-');
+        int size = mtime > 0 ? key.lastIndexOf('-', mtime - 1) : -1;
+        if(size <= 0) {
+            return null;
+        }
+        return key.substring(0, size);
+    }
+
+    private static ColorMap read_cached(File cached) {
+        try {
+            List<ColorMapPack.Entry> index;
+            try(InputStream in = ColorMapPack.open_mapped(cached)) {
+                index = ColorMapPack.read_index(in);
+            }
+            if(index.size() != 1 || index.get(0).count != ColorMap.LUT_SIZE) {
+                return null;
+            }
+            // Offsets are from the start
+            try(InputStream in = ColorMapPack.open_mapped(cached)) {
+                return ColorMapPack.read(in, index.get(0));
+            }
+        } catch (IOException e) {
+            // Damaged, compile it again
+            return null;
+        }
+    }
+
+    private static void write_cached(File cache_dir, File cached, ColorMap map) throws IOException {
+        if(!cache_dir.isDirectory() && !cache_dir.mkdirs()) {
+            throw new IOException("Could not make " + cache_dir);
+        }
+        // Tables for older versions of the same file
+        File old[] = cache_dir.listFiles();
+        if(old != null) {
+            for(File f : old) {
+                if(map.name.equals(cached_name(f.getName())) && !f.equals(cached)) {
+                    f.delete();
+                }
+            }
+        }
+        File tmp = new File(cached.getPath() + ".tmp");
+        try(OutputStream out = new FileOutputStream(tmp)) {
+            ColorMapPack.write(out, Collections.singletonList(map));
+        }
+        if(!tmp.renameTo(cached)) {
+            throw new IOException("Could not move " + cached.getName() + " into place");
+        }
+    }
+
+    /** Just enough JSON for palette files: objects, arrays, strings and numbers. */
+    private static class Json {
+        final String text;
+        int pos = 0;
+
+        Json(String text) {
+            this.text = text;
+        }
+
+        Object document() {
+            Object value = value();
+            space();
+            if(pos != text.length()) {
+                throw error("unexpected " + text.charAt(pos));
+            }
+            return value;
+        }
+
+        private Object value() {
+            space();
+            if(pos >= text.length()) {
+                throw error("unexpected end");
+            }
+            char c = text.charAt(pos);
+            if(c == '{') {
+                Map<String, Object> map = new LinkedHashMap<>();
+                pos++;
+                if(!next('}')) {
+                    do {
+                        space();
+                        if(pos >= text.length() || text.charAt(pos) != '"') {
+                            throw error("expected a key");
+                        }
+                        String key = string();
+                        expect(':');
+                        map.put(key, value());
+                    } while(next(','));
+                    expect('}');
+                }
+                return map;
+            }
+            if(c == '[') {
+                List<Object> list = new ArrayList<>();
+                pos++;
+                if(!next(']')) {
+                    do {
+                        list.add(value());
+                    } while(next(','));
+                    expect(']');
+                }
+                return list;
+            }
+            if(c == '"') {
+                return string();
+            }
+            int start = pos;
+            while(pos < text.length() && "+-.0123456789eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            try {
+                return Double.parseDouble(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("unexpected " + c);
+            }
+        }
+
+        private String string() {
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            while(pos < text.length() && text.charAt(pos) != '"') {
+                char c = text.charAt(pos++);
+                if(c == '\\' && pos < text.length()) {
+                    c = text.charAt(pos++);
+                }
+                sb.append(c);
+            }
+            if(pos >= text.length()) {
+                throw error("unterminated string");
+            }
+            pos++;
+            return sb.toString();
+        }
+
+        private boolean next(char c) {
+            space();
+            if(pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if(!next(c)) {
+                throw error("expected " + c);
+            }
+        }
+
+        private void space() {
+            while(pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at character " + (pos + 1));
+        }
+    }
+}
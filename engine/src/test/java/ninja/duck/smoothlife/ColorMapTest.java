@@ -0,0 +1,62 @@
+package ninja.duck.smoothlife;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ColorMapTest {
+    static final double VALUES[] = {
+            Double.NaN, -1, -Double.MIN_VALUE, 0, 0.25, 0.5, 0.999, 1, 1.5,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+    };
+
+    @Test
+    public void map_matches_get_fast() {
+        ColorMap cmap = ColorMap.getColorMap("viridis");
+        int dst[] = new int[VALUES.length];
+        cmap.map(VALUES, dst, 0, VALUES.length);
+        for(int i=0; i<VALUES.length; i++) {
+            assertEquals("value " + VALUES[i], cmap.get_fast(VALUES[i]), dst[i]);
+        }
+    }
+
+    @Test
+    public void nan_and_out_of_range() {
+        ColorMap cmap = ColorMap.getColorMap("viridis");
+        int dst[] = new int[4];
+        cmap.map(new double[]{Double.NaN, -3, 0, 2}, dst, 0, 4);
+        assertEquals(cmap.notApplicableColor, dst[0]);
+        // Clamped to the ends
+        assertEquals(cmap.get_fast(0), dst[1]);
+        assertEquals(dst[2], dst[1]);
+        assertEquals(cmap.get_fast(1), dst[3]);
+
+        float floats[] = {Float.NaN, -3f, 0.5f, 2f};
+        int from_floats[] = new int[4];
+        cmap.map(floats, from_floats, 0, 4);
+        assertEquals(cmap.notApplicableColor, from_floats[0]);
+        assertEquals(cmap.get_fast(0), from_floats[1]);
+        assertEquals(cmap.get_fast(0.5), from_floats[2]);
+        assertEquals(cmap.get_fast(1), from_floats[3]);
+    }
+
+    /** Only the given range is written, and the two offsets are independent. */
+    @Test
+    public void offsets() {
+        ColorMap cmap = ColorMap.getColorMap("magma");
+        int dst[] = new int[6];
+        cmap.map(new double[]{9, 9, 0.1, 0.9, 9, 9}, dst, 2, 2);
+        assertEquals(0, dst[0]);
+        assertEquals(0, dst[1]);
+        assertEquals(cmap.get_fast(0.1), dst[2]);
+        assertEquals(cmap.get_fast(0.9), dst[3]);
+        assertEquals(0, dst[4]);
+
+        int shifted[] = new int[3];
+        cmap.map(new float[]{0.1f, 0.2f, 0.3f, 0.4f}, 1, shifted, 0, 3);
+        assertEquals(cmap.get_fast(0.2f), shifted[0]);
+        assertEquals(cmap.get_fast(0.4f), shifted[2]);
+        cmap.map(new double[]{0.7, 0.8}, 1, shifted, 2, 1);
+        assertEquals(cmap.get_fast(0.8), shifted[2]);
+    }
+}
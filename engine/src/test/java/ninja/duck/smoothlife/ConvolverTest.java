@@ -0,0 +1,67 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConvolverTest {
+    static final int SIZE = 64;
+
+    static Convolver estimated() {
+        return new Convolver(SIZE, SIZE, 4, 12, Convolver.logres(SIZE, SIZE), (int)fftw3.FFTW_ESTIMATE);
+    }
+
+    /** Hold the planner on another thread, like a background MEASURE build. */
+    static class Planning extends Thread {
+        final CountDownLatch holding = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            Convolver.planner.lock();
+            try {
+                holding.countDown();
+                done.await();
+            } catch(InterruptedException e) {
+                // Let go
+            } finally {
+                Convolver.planner.unlock();
+            }
+        }
+
+        void finish() throws InterruptedException {
+            done.countDown();
+            join();
+        }
+    }
+
+    @Test
+    public void destroy_does_not_wait_for_the_planner() throws InterruptedException {
+        Convolver conv = estimated();
+        long before = ResourceArena.live_bytes();
+        Planning planning = new Planning();
+        planning.start();
+        planning.holding.await();
+        try {
+            conv.destroy();
+            // The buffers go right away, the plans wait their turn
+            assertTrue(ResourceArena.live_bytes() < before);
+            assertEquals(2, Convolver.retired.size());
+            assertNull(Convolver.try_estimated(SIZE, SIZE, 4, 12, Convolver.logres(SIZE, SIZE)));
+        } finally {
+            planning.finish();
+        }
+        // The next thread to plan cleans up
+        Convolver next = Convolver.try_estimated(SIZE, SIZE, 4, 12, Convolver.logres(SIZE, SIZE));
+        assertNotNull(next);
+        assertTrue(Convolver.retired.isEmpty());
+        next.destroy();
+        assertTrue(Convolver.retired.isEmpty());
+    }
+}
@@ -0,0 +1,183 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntegratorTest {
+    static final int CELLS = 64;
+    static final double T = 1.0;
+
+    /**
+     * A smooth s(n, m) evaluated exactly, since the rule table's nearest
+     * lookup is a staircase that no method converges on at its real order.
+     * Stays well inside (0, 1) so clamping never kicks in.
+     */
+    static class SmoothRules extends Rules {
+        @Override
+        double s(double n, double m) {
+            return 0.5 + 0.3 * Math.sin(3 * n - 2 * m);
+        }
+
+        @Override
+        void s_lookup(double dest[], double n_arr[], double m_arr[]) {
+            for(int i=0; i<n_arr.length; i++) {
+                dest[i] = s(n_arr[i], m_arr[i]);
+            }
+        }
+
+        @Override
+        void s_fast(double dest[], double n_arr[], double m_arr[], double dt) {
+            double change = 0.0;
+            int active = 0;
+            for(int i=0; i<n_arr.length; i++) {
+                double f = dest[i];
+                double v = f + dt * (s(n_arr[i], m_arr[i]) - f);
+                if(Math.abs(v - f) > ACTIVE_EPS) {
+                    change += (v - f) * (v - f);
+                    active++;
+                }
+                dest[i] = v;
+            }
+            rms_change = active_rms(change, active);
+        }
+    }
+
+    /** Ring neighbourhoods on a 1D torus, smooth in the field. */
+    static final Integrator.Convolution RING = new Integrator.Convolution() {
+        @Override
+        public void convolve(double f[], double n_out[], double m_out[]) {
+            int len = f.length;
+            for(int i=0; i<len; i++) {
+                m_out[i] = (f[(i + len - 1) % len] + f[i] + f[(i + 1) % len]) / 3;
+                n_out[i] = (f[(i + len - 3) % len] + f[(i + len - 2) % len]
+                        + f[(i + 2) % len] + f[(i + 3) % len]) / 4;
+            }
+        }
+    };
+
+    static double[] initial() {
+        double f[] = new double[CELLS];
+        for(int i=0; i<CELLS; i++) {
+            f[i] = 0.5 + 0.3 * Math.sin(2 * Math.PI * i / CELLS) * Math.cos(6 * Math.PI * i / CELLS);
+        }
+        return f;
+    }
+
+    static double[] solve(String name, int steps) {
+        Integrator integrator = Integrator.get(name);
+        Rules rules = new SmoothRules();
+        double f[] = initial();
+        double n[] = new double[CELLS];
+        double m[] = new double[CELLS];
+        for(int i=0; i<steps; i++) {
+            integrator.step(f, T / steps, rules, RING, n, m);
+        }
+        return f;
+    }
+
+    static double max_error(double a[], double b[]) {
+        double err = 0;
+        for(int i=0; i<a.length; i++) {
+            err = Math.max(err, Math.abs(a[i] - b[i]));
+        }
+        return err;
+    }
+
+    /**
+     * Halving dt from {@code steps} must shrink the error against a fine
+     * RK4 reference by at least 2^order, with a little slack for the
+     * asymptotic regime. The adaptive controller assumes the estimate from
+     * {@link Integrator#step} scales at {@link Integrator#error_order()}, so
+     * the method has to be at least that accurate.
+     */
+    static void check_order(String name, int order, int steps) {
+        assertTrue(name + " order " + order + " is below its error_order",
+                order >= Integrator.get(name).error_order());
+        double reference[] = solve(Integrator.RK4, 4096);
+        double coarse = max_error(solve(name, steps), reference);
+        double fine = max_error(solve(name, 2 * steps), reference);
+        double finer = max_error(solve(name, 4 * steps), reference);
+        double observed = Math.log(coarse / fine) / Math.log(2);
+        double observed_finer = Math.log(fine / finer) / Math.log(2);
+        assertTrue(name + " error " + coarse + " -> " + fine + " is order " + observed + ", not " + order,
+                observed > order - 0.3);
+        assertTrue(name + " error " + fine + " -> " + finer + " is order " + observed_finer + ", not " + order,
+                observed_finer > order - 0.3);
+    }
+
+    @Test
+    public void euler_is_first_order() {
+        check_order(Integrator.EULER, 1, 16);
+    }
+
+    @Test
+    public void heun_is_second_order() {
+        check_order(Integrator.HEUN, 2, 16);
+    }
+
+    @Test
+    public void rk4_is_fourth_order() {
+        check_order(Integrator.RK4, 4, 8);
+    }
+
+    @Test
+    public void exponential_is_first_order() {
+        check_order(Integrator.EXPONENTIAL, 1, 16);
+    }
+
+    @Test
+    public void semi_implicit_is_first_order() {
+        check_order(Integrator.SEMI_IMPLICIT, 1, 16);
+    }
+
+    /** The stable methods must not blow up where Euler's dt limit would. */
+    @Test
+    public void stable_methods_stay_bounded_at_large_dt() {
+        for(String name : new String[]{Integrator.EXPONENTIAL, Integrator.SEMI_IMPLICIT}) {
+            double f[] = solve(name, 1);
+            Integrator integrator = Integrator.get(name);
+            double n[] = new double[CELLS];
+            double m[] = new double[CELLS];
+            for(int i=0; i<20; i++) {
+                integrator.step(f, integrator.max_dt(), new SmoothRules(), RING, n, m);
+            }
+            for(double v : f) {
+                assertTrue(name + " left [0, 1]: " + v, v >= 0 && v <= 1);
+            }
+        }
+    }
+
+    /** One step of a glider on a {@code size} square grid, with the kernels of a 128 grid. */
+    static double glider_error(String name, int size) {
+        Convolver conv = new Convolver(size, size, 4, 12, Convolver.logres(128, 128), (int)fftw3.FFTW_ESTIMATE);
+        try {
+            double f[] = new double[size * size];
+            SeedPattern.stamp(f, size, size, SeedPattern.GLIDER_SHAPE, 4 / 7.0, 0, size / 2, size / 2);
+            Rules rules = new SmoothTimestepRules();
+            rules.precalculate(Simulation.RULE_TABLE);
+            Integrator.Convolution convolution = new Integrator.Convolution() {
+                @Override
+                public void convolve(double f[], double n_out[], double m_out[]) {
+                    conv.convolve(f, n_out, m_out);
+                }
+            };
+            return Integrator.get(name).step(f, 0.2, rules, convolution, new double[f.length], new double[f.length]);
+        } finally {
+            conv.destroy();
+        }
+    }
+
+    /** Empty space around the same pattern must not shrink the estimate. */
+    @Test
+    public void error_estimate_ignores_empty_space() {
+        for(String name : new String[]{Integrator.EULER, Integrator.HEUN, Integrator.RK4, Integrator.EXPONENTIAL, Integrator.SEMI_IMPLICIT}) {
+            double small = glider_error(name, 128);
+            double big = glider_error(name, 512);
+            assertTrue(name + " estimate is zero", small > 0);
+            assertEquals(name, small, big, 1e-3 * small);
+        }
+    }
+}
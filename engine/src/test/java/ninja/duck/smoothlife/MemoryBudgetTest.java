@@ -0,0 +1,60 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryBudgetTest {
+    static Simulation.Config config() {
+        Simulation.Config config = new Simulation.Config();
+        config.width = 256;
+        config.height = 192;
+        config.inner_radius = 4;
+        config.pattern = SeedPattern.GLIDER;
+        config.plan_flags = (int)fftw3.FFTW_ESTIMATE;
+        return config;
+    }
+
+    @Test
+    public void rebuilds_count_the_second_convolver() {
+        Simulation.Config old = config();
+        Simulation.Config next = config();
+        next.pattern = SeedPattern.NOISE;
+        next.inner_radius = 5;
+        assertEquals(0, MemoryBudget.rebuild_bytes(old, next));
+        next.plan_flags = (int)fftw3.FFTW_MEASURE;
+        assertTrue(MemoryBudget.rebuild_bytes(old, next) > 0);
+        next = config();
+        next.width = 512;
+        long bigger = MemoryBudget.rebuild_bytes(old, next);
+        next.low_memory = true;
+        assertTrue(MemoryBudget.rebuild_bytes(old, next) < bigger);
+    }
+
+    /** The native side alone, windows included, must stay inside the estimate. */
+    @Test
+    public void estimate_covers_native_memory() {
+        for(boolean low_memory : new boolean[]{false, true}) {
+            Simulation.Config config = config();
+            config.low_memory = low_memory;
+            long before = ResourceArena.live_bytes();
+            Simulation sim = new Simulation(config);
+            try {
+                sim.set_seed(5);
+                sim.reseed();
+                long most = 0;
+                for(int i=0; i<30; i++) {
+                    sim.step();
+                    sim.check_dead();
+                    most = Math.max(most, ResourceArena.live_bytes() - before);
+                }
+                long estimate = MemoryBudget.simulation_bytes(config);
+                assertTrue("low memory " + low_memory + ": " + most + " native of " + estimate, most < estimate);
+            } finally {
+                sim.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ninja.duck.smoothlife;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class OutputStageTest {
+    static final int W = 100;
+    static final int H = 70;
+
+    static double[] field(double phase) {
+        double f[] = new double[W * H];
+        for(int r=0; r<H; r++) {
+            for(int c=0; c<W; c++) {
+                f[r * W + c] = c < W / 2 ? 0 : 0.5 + 0.5 * Math.sin(r * 0.3 + c * 0.2 + phase);
+            }
+        }
+        f[7] = Double.NaN;
+        return f;
+    }
+
+    static int[] fresh(double field[], ColorMap cmap, int scaling) {
+        OutputStage stage = new OutputStage(W, H);
+        stage.set_colors(cmap, scaling);
+        int pixels[] = new int[W * H];
+        stage.render(field, pixels);
+        return pixels;
+    }
+
+    static void assert_pixels(int expected[], int actual[]) {
+        for(int i=0; i<expected.length; i++) {
+            assertEquals("pixel " + i, expected[i], actual[i]);
+        }
+    }
+
+    /** Recoloring looks up every pixel, whether or not its tile changed. */
+    @Test
+    public void recolor_matches_a_fresh_render() {
+        ColorMap first = ColorMap.getColorMap("viridis");
+        ColorMap second = ColorMap.getColorMap("magma");
+        OutputStage stage = new OutputStage(W, H);
+        int pixels[] = new int[W * H];
+        double f[] = field(0);
+        stage.set_colors(first, 50);
+        stage.render(f, pixels);
+        stage.upload(0, NO_SINK);
+
+        stage.set_colors(second, 70);
+        assertEquals(stage.tile_count(), stage.render(f, pixels));
+        assert_pixels(fresh(f, second, 70), pixels);
+        // Every tile goes up again
+        assertEquals(stage.tile_count(), stage.upload(0, NO_SINK));
+    }
+
+    /** Tiles that moved since the last render are still requantized. */
+    @Test
+    public void recolor_requantizes_what_moved() {
+        ColorMap first = ColorMap.getColorMap("viridis");
+        ColorMap second = ColorMap.getColorMap("magma");
+        OutputStage stage = new OutputStage(W, H);
+        int pixels[] = new int[W * H];
+        stage.set_colors(first, 50);
+        stage.render(field(0), pixels);
+        double moved[] = field(1);
+        stage.set_colors(second, 50);
+        stage.render(moved, pixels);
+        assert_pixels(fresh(moved, second, 50), pixels);
+        // And nothing is left to do
+        assertEquals(0, stage.render(moved, pixels));
+    }
+
+    /** A cell going NaN, or coming back from it, recolors its tile. Staying NaN doesn't. */
+    @Test
+    public void nan_cells_are_tracked() {
+        ColorMap cmap = ColorMap.getColorMap("viridis");
+        OutputStage stage = new OutputStage(W, H);
+        int pixels[] = new int[W * H];
+        double f[] = field(0);
+        stage.set_colors(cmap, 50);
+        stage.render(f, pixels);
+        assertEquals(0, stage.render(f, pixels));
+        int cell = 40 * W + 80;
+        f[cell] = Double.NaN;
+        assertEquals(1, stage.render(f, pixels));
+        assertEquals(cmap.notApplicableColor, pixels[cell]);
+        assertEquals(0, stage.render(f, pixels));
+        f[cell] = 0.5;
+        assertEquals(1, stage.render(f, pixels));
+        assertEquals(cmap.get_fast(0.5), pixels[cell]);
+    }
+
+    static final OutputStage.SpanSink NO_SINK = new OutputStage.SpanSink() {
+        @Override
+        public void span(int x, int y, int w, int h) {
+        }
+    };
+}
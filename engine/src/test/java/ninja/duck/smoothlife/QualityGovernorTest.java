@@ -0,0 +1,166 @@
+package ninja.duck.smoothlife;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QualityGovernorTest {
+    static final double BUDGET = 33;
+    static final double OVER = BUDGET * 1.5;
+    static final double FINE = BUDGET * 0.5;
+
+    /** Feed {@code frames} samples of {@code ms} each, returning the frames (counted from {@code start}) the tier changed on. */
+    static List<Integer> feed(QualityGovernor governor, double ms, int frames, int start) {
+        List<Integer> changes = new ArrayList<>();
+        for(int i=0; i<frames; i++) {
+            if(governor.add_sample(ms)) {
+                changes.add(start + i);
+            }
+        }
+        return changes;
+    }
+
+    @Test
+    public void steps_down_after_settle_and_down_windows() {
+        QualityGovernor governor = new QualityGovernor(BUDGET);
+        int expected = QualityGovernor.SETTLE_FRAMES + QualityGovernor.DOWN_WINDOWS * QualityGovernor.WINDOW - 1;
+        List<Integer> changes = feed(governor, OVER, expected + 1, 0);
+        assertEquals(1, changes.size());
+        assertEquals(expected, (int)changes.get(0));
+        assertEquals(1, governor.tier());
+    }
+
+    @Test
+    public void ignores_samples_while_settling() {
+        QualityGovernor governor = new QualityGovernor(BUDGET);
+        // A warm-up spike, then frames that fit
+        assertTrue(feed(governor, 100 * BUDGET, QualityGovernor.SETTLE_FRAMES, 0).isEmpty());
+        assertTrue(feed(governor, BUDGET, 20 * QualityGovernor.WINDOW, 0).isEmpty());
+        assertEquals(0, governor.tier());
+    }
+
+    @Test
+    public void one_slow_window_is_not_enough() {
+        QualityGovernor governor = new QualityGovernor(BUDGET);
+        feed(governor, FINE, QualityGovernor.SETTLE_FRAMES, 0);
+        for(int i=0; i<50; i++) {
+            // Over budget windows that never come DOWN_WINDOWS in a row
+            assertTrue(feed(governor, OVER, QualityGovernor.WINDOW * (QualityGovernor.DOWN_WINDOWS - 1), 0).isEmpty());
+            assertTrue(feed(governor, BUDGET, QualityGovernor.WINDOW, 0).isEmpty());
+        }
+        assertEquals(0, governor.tier());
+    }
+
+    @Test
+    public void steps_up_only_after_up_windows_and_settle() {
+        QualityGovernor governor = new QualityGovernor(BUDGET);
+        governor.set_base_scale(4);
+        feed(governor, OVER, QualityGovernor.SETTLE_FRAMES + QualityGovernor.DOWN_WINDOWS * QualityGovernor.WINDOW, 0);
+        assertEquals(1, governor.tier());
+
+        int expected = QualityGovernor.SETTLE_FRAMES + QualityGovernor.UP_WINDOWS * QualityGovernor.WINDOW - 1;
+        // Cheap enough that even the better tier fits with headroom
+        List<Integer> changes = feed(governor, FINE / 2, expected + 1, 0);
+        assertEquals(1, changes.size());
+        assertEquals(expected, (int)changes.get(0));
+        assertEquals(0, governor.tier());
+    }
+
+    @Test
+    public void up_windows_must_come_in_a_row() {
+        QualityGovernor governor = new QualityGovernor(BUDGET);
+        governor.set_base_scale(4);
+        feed(governor, OVER, QualityGovernor.SETTLE_FRAMES + QualityGovernor.DOWN_WINDOWS * QualityGovernor.WINDOW, 0);
+        feed(governor, BUDGET, QualityGovernor.SETTLE_FRAMES, 0);
+        for(int i=0; i<20; i++) {
+            assertTrue(feed(governor, FINE / 2, QualityGovernor.WINDOW * (QualityGovernor.UP_WINDOWS - 1), 0).isEmpty());
+            // Fits, but wouldn't at the better tier
+            assertTrue(feed(governor, BUDGET * 0.8, QualityGovernor.WINDOW, 0).isEmpty());
+        }
+        assertEquals(1, governor.tier());
+    }
+
+    /**
+     * Frame time follows the grid size, like the real thing. A load over
+     * budget at full quality must only ever step down, to a tier that fits,
+     * and stay there rather than bounce back up.
+     */
+    @Test
+    public void does_not_oscillate_on_a_cost_model() {
+        for(int base_scale=1; base_scale<=6; base_scale++) {
+            for(double load : new double[]{1.2, 1.5, 2.5, 5}) {
+                QualityGovernor governor = new QualityGovernor(BUDGET);
+                governor.set_base_scale(base_scale);
+                double full_cost = load * BUDGET;
+                int changes = 0;
+                int last_tier = 0;
+                boolean went_up = false;
+                for(int frame=0; frame<5000; frame++) {
+                    double ratio = (double)base_scale / governor.scale();
+                    // A little jitter, the same every run
+                    double jitter = 1 + 0.1 * Math.sin(frame * 0.7);
+                    if(governor.add_sample(full_cost * ratio * ratio * jitter)) {
+                        changes++;
+                        went_up |= governor.tier() < last_tier;
+                        last_tier = governor.tier();
+                    }
+                }
+                String what = "scale " + base_scale + " load " + load;
+                assertTrue(what + " stepped back up", !went_up);
+                assertTrue(what + " changed " + changes + " times", changes <= QualityGovernor.TIERS.length - 1);
+            }
+        }
+    }
+
+    /**
+     * Work that doesn't fit even at the coarsest scale ends up on the delay
+     * tier and rests there, since a longer delay can't make frames cheaper.
+     * Once the work fits again it goes straight back to the coarsest scale.
+     */
+    @Test
+    public void delay_tier_is_a_resting_state_until_work_fits() {
+        int last = QualityGovernor.TIERS.length - 1;
+        for(int base_scale=1; base_scale<=4; base_scale++) {
+            QualityGovernor governor = new QualityGovernor(BUDGET);
+            governor.set_base_scale(base_scale);
+            // Over budget at every scale the tiers reach
+            double coarsest = base_scale + QualityGovernor.TIERS[last].scale_add;
+            double full_cost = 2 * BUDGET * (coarsest / base_scale) * (coarsest / base_scale);
+            int changes = 0;
+            for(int frame=0; frame<5000; frame++) {
+                double ratio = (double)base_scale / governor.scale();
+                if(governor.add_sample(full_cost * ratio * ratio)) {
+                    changes++;
+                }
+            }
+            String what = "scale " + base_scale;
+            assertEquals(what, last, governor.tier());
+            assertTrue(what + " has no extra delay on its last tier", governor.extra_delay() > 0);
+            assertEquals(what + " changed " + changes + " times", last, changes);
+
+            // The load drops to where the coarsest scale fits with headroom
+            List<Integer> up = feed(governor, FINE, QualityGovernor.SETTLE_FRAMES + QualityGovernor.UP_WINDOWS * QualityGovernor.WINDOW, 0);
+            assertEquals(what, 1, up.size());
+            assertEquals(what, last - 1, governor.tier());
+            assertEquals(what, 0, governor.extra_delay());
+        }
+    }
+
+    /** A recorded-style trace: smooth, a burst of heavy frames, smooth again, at every alignment with the windows. */
+    @Test
+    public void rides_out_a_short_burst() {
+        for(int offset=0; offset<QualityGovernor.WINDOW; offset++) {
+            QualityGovernor governor = new QualityGovernor(BUDGET);
+            List<Integer> changes = new ArrayList<>();
+            changes.addAll(feed(governor, FINE, 200 + offset, 0));
+            // At most one window goes over budget, however the burst is split
+            changes.addAll(feed(governor, 3 * BUDGET, QualityGovernor.WINDOW / 2, 0));
+            changes.addAll(feed(governor, FINE, 400, 0));
+            assertTrue("offset " + offset + " changed at " + changes, changes.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceArenaTest {
+    static Simulation.Config config(int width, int height) {
+        Simulation.Config config = new Simulation.Config();
+        config.width = width;
+        config.height = height;
+        config.inner_radius = 4;
+        config.plan_flags = (int)fftw3.FFTW_ESTIMATE;
+        return config;
+    }
+
+    @Test
+    public void release_frees_everything() {
+        long before = ResourceArena.live_bytes();
+        ResourceArena arena = new ResourceArena();
+        arena.doubles(100);
+        arena.doubles(28);
+        assertEquals(128 * 8, arena.bytes());
+        assertEquals(before + 128 * 8, ResourceArena.live_bytes());
+        arena.release();
+        assertEquals(0, arena.bytes());
+        assertEquals(before, ResourceArena.live_bytes());
+    }
+
+    /** What the wallpaper does on every settings change and surface change. */
+    @Test
+    public void reinit_churn_does_not_leak() {
+        long before = ResourceArena.live_bytes();
+        for(int i=0; i<20; i++) {
+            Simulation.Config config = config(64 + 32 * (i % 3), 96);
+            config.low_memory = i % 2 == 1;
+            Simulation sim = new Simulation(config);
+            sim.set_seed(i);
+            sim.reseed();
+            for(int s=0; s<3; s++) {
+                sim.step();
+                sim.check_dead();
+            }
+            assertTrue(ResourceArena.live_bytes() > before);
+
+            // A grid change, a kernel change, and a plan upgrade that may or may not win
+            Simulation.Config next = config(96, 64);
+            sim.reconfigure(next);
+            next.inner_radius = 5;
+            sim.reconfigure(next);
+            next.plan_flags = (int)fftw3.FFTW_MEASURE;
+            sim.reconfigure(next);
+            sim.step();
+
+            // A superseded background rebuild
+            Simulation.Config superseded = config(128, 128);
+            Simulation.Rebuild rebuild = sim.prepare(superseded);
+            rebuild.run();
+            rebuild.cancel();
+
+            sim.destroy();
+            assertEquals("live bytes after round " + i, before, ResourceArena.live_bytes());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SeedPatternTest {
+    static final String PATTERNS[] = {SeedPattern.SPECKLES, SeedPattern.GLIDER, SeedPattern.GLIDERS, SeedPattern.NOISE};
+    static final int STEPS = 8;
+
+    static Simulation run(String pattern, long seed, double dt) {
+        Simulation.Config config = new Simulation.Config();
+        config.width = 128;
+        config.height = 96;
+        config.inner_radius = 4;
+        config.dt = dt;
+        config.pattern = pattern;
+        config.plan_flags = (int)fftw3.FFTW_ESTIMATE;
+        Simulation sim = new Simulation(config);
+        sim.set_seed(seed);
+        sim.reseed();
+        for(int i=0; i<STEPS; i++) {
+            sim.step();
+            sim.check_dead();
+        }
+        return sim;
+    }
+
+    @Test
+    public void same_seed_gives_the_same_run() {
+        for(String pattern : PATTERNS) {
+            for(double dt : new double[]{-1, 0.2}) {
+                Simulation a = run(pattern, 1234, dt);
+                Simulation b = run(pattern, 1234, dt);
+                try {
+                    assertArrayEquals(pattern + " dt " + dt, a.field, b.field, 0);
+                    assertEquals(pattern + " next seed", a.seed(), b.seed());
+                } finally {
+                    a.destroy();
+                    b.destroy();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void different_seed_gives_a_different_run() {
+        for(String pattern : PATTERNS) {
+            Simulation a = run(pattern, 1234, -1);
+            Simulation b = run(pattern, 1235, -1);
+            try {
+                assertFalse(pattern, Arrays.equals(a.field, b.field));
+            } finally {
+                a.destroy();
+                b.destroy();
+            }
+        }
+    }
+
+    /** Reseeds draw from where the seed has moved on to, so they repeat too. */
+    @Test
+    public void reseeds_follow_the_seed() {
+        Simulation a = run(SeedPattern.GLIDERS, 99, -1);
+        Simulation b = run(SeedPattern.GLIDERS, 99, -1);
+        try {
+            for(int i=0; i<3; i++) {
+                a.reseed();
+                b.reseed();
+                assertArrayEquals("reseed " + i, a.field, b.field, 0);
+            }
+        } finally {
+            a.destroy();
+            b.destroy();
+        }
+    }
+}
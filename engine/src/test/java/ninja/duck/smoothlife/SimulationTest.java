@@ -0,0 +1,140 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reconfiguring in place must give the same simulation as building the new
+ * configuration from scratch, for every kind of change.
+ */
+public class SimulationTest {
+    static final int STEPS = 5;
+    static final double TOLERANCE = 1e-6;
+
+    static Simulation.Config base() {
+        Simulation.Config config = new Simulation.Config();
+        config.width = 128;
+        config.height = 96;
+        config.inner_radius = 4;
+        config.dt = 0.2;
+        config.pattern = SeedPattern.GLIDERS;
+        config.plan_flags = (int)fftw3.FFTW_ESTIMATE;
+        return config;
+    }
+
+    static void step(Simulation sim, int steps) {
+        for(int i=0; i<steps; i++) {
+            sim.step();
+            sim.check_dead();
+        }
+    }
+
+    /**
+     * Run a while on {@code base()}, move to {@code next}, then check the
+     * next {@link #STEPS} steps against a simulation built for {@code next}
+     * starting from the same state.
+     */
+    static void check(Simulation.Config next, int expected_changes) {
+        Simulation sim = new Simulation(base());
+        Simulation fresh = null;
+        try {
+            sim.set_seed(42);
+            sim.reseed();
+            step(sim, 3);
+            assertEquals(expected_changes, sim.reconfigure(next));
+            fresh = new Simulation(next);
+            assertEquals(sim.width, fresh.width);
+            assertEquals(sim.height, fresh.height);
+            System.arraycopy(sim.field, 0, fresh.field, 0, sim.field.length);
+            fresh.set_seed(sim.seed());
+            fresh.dead_count = sim.dead_count;
+            for(int i=0; i<STEPS; i++) {
+                step(sim, 1);
+                step(fresh, 1);
+                assertArrayEquals("step " + i, fresh.field, sim.field, TOLERANCE);
+            }
+        } finally {
+            sim.destroy();
+            if(fresh != null) {
+                fresh.destroy();
+            }
+        }
+    }
+
+    @Test
+    public void grid_change_matches_fresh_build() {
+        Simulation.Config next = base();
+        next.width = 160;
+        next.height = 128;
+        check(next, Simulation.CHANGED_GRID);
+    }
+
+    @Test
+    public void memory_mode_change_matches_fresh_build() {
+        Simulation.Config next = base();
+        next.low_memory = true;
+        check(next, Simulation.CHANGED_GRID);
+    }
+
+    @Test
+    public void kernel_change_matches_fresh_build() {
+        Simulation.Config next = base();
+        next.inner_radius = 5;
+        check(next, Simulation.CHANGED_KERNELS);
+    }
+
+    @Test
+    public void rules_change_matches_fresh_build() {
+        Simulation.Config next = base();
+        next.dt = -1;
+        check(next, Simulation.CHANGED_RULES | Simulation.CHANGED_STEPPING);
+    }
+
+    @Test
+    public void stepping_change_matches_fresh_build() {
+        Simulation.Config next = base();
+        next.dt = 0.3;
+        check(next, Simulation.CHANGED_STEPPING);
+        // More convolutions per step, which resizes the sparse window padding
+        next = base();
+        next.integrator = Integrator.HEUN;
+        next.adaptive = true;
+        check(next, Simulation.CHANGED_STEPPING);
+    }
+
+    @Test
+    public void pattern_change_matches_fresh_build() {
+        Simulation.Config next = base();
+        next.pattern = SeedPattern.NOISE;
+        check(next, Simulation.CHANGED_PATTERN);
+    }
+
+    @Test
+    public void pattern_change_applies_at_the_next_reseed() {
+        Simulation.Config next = base();
+        next.pattern = SeedPattern.NOISE;
+        Simulation sim = new Simulation(base());
+        Simulation fresh = new Simulation(next);
+        try {
+            sim.reconfigure(next);
+            sim.set_seed(7);
+            fresh.set_seed(7);
+            sim.reseed();
+            fresh.reseed();
+            assertArrayEquals(fresh.field, sim.field, 0);
+        } finally {
+            sim.destroy();
+            fresh.destroy();
+        }
+    }
+
+    @Test
+    public void plan_change_matches_fresh_build() {
+        Simulation.Config next = base();
+        next.plan_flags = (int)fftw3.FFTW_MEASURE;
+        check(next, Simulation.CHANGED_PLANS);
+    }
+}
@@ -0,0 +1,111 @@
+package ninja.duck.smoothlife;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SnapshotTest {
+    static final int W = 48;
+    static final int H = 32;
+
+    File file;
+    byte good[];
+
+    @Before
+    public void write() throws IOException {
+        file = File.createTempFile("snapshot", ".snap");
+        double field[] = new double[W * H];
+        for(int i=0; i<field.length; i++) {
+            field[i] = 0.5 + 0.5 * Math.sin(i * 0.01);
+        }
+        Snapshot.capture(field, W, H, 4, 12, 0.2, Integrator.HEUN, 42, 3).write(file);
+        good = Files.readAllBytes(file.toPath());
+    }
+
+    @After
+    public void delete() {
+        file.delete();
+    }
+
+    /** Reads {@code bytes} back, which must either work or fail with an IOException. */
+    Snapshot read(byte bytes[]) throws IOException {
+        Files.write(file.toPath(), bytes);
+        return Snapshot.read(file);
+    }
+
+    @Test
+    public void round_trip() throws IOException {
+        Snapshot snap = read(good);
+        assertEquals(W, snap.width);
+        assertEquals(H, snap.height);
+        assertEquals(Integrator.HEUN, snap.integrator);
+        assertEquals(42, snap.seed);
+        assertEquals(3, snap.dead_count);
+        double expected[] = new double[W * H];
+        for(int i=0; i<expected.length; i++) {
+            expected[i] = 0.5 + 0.5 * Math.sin(i * 0.01);
+        }
+        assertArrayEquals(expected, snap.field, 1.0 / 65535);
+    }
+
+    @Test
+    public void missing_or_other_version_is_null() throws IOException {
+        byte other[] = good.clone();
+        other[7]++;
+        assertNull(read(other));
+        file.delete();
+        assertNull(Snapshot.read(file));
+    }
+
+    @Test
+    public void truncated_is_an_io_error() {
+        for(int len=8; len<good.length; len++) {
+            try {
+                read(Arrays.copyOf(good, len));
+                fail("read " + len + " of " + good.length + " bytes");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    /** Corrupt header fields can't be caught by the CRC, only by checking them. */
+    @Test
+    public void damaged_header_is_an_io_error_or_harmless() {
+        for(int i=8; i<80; i++) {
+            for(int bits : new int[]{0x01, 0x80, 0xff}) {
+                byte bad[] = good.clone();
+                bad[i] ^= bits;
+                try {
+                    read(bad);
+                } catch (IOException e) {
+                    // Fine
+                } catch (RuntimeException e) {
+                    throw new AssertionError("byte " + i + " ^ " + bits + " threw " + e, e);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void damaged_payload_is_an_io_error() {
+        byte bad[] = good.clone();
+        bad[bad.length - 10] ^= 0x40;
+        try {
+            read(bad);
+            fail("read a damaged payload");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
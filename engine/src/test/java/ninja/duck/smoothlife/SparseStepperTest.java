@@ -0,0 +1,124 @@
+package ninja.duck.smoothlife;
+
+import org.bytedeco.fftw.global.fftw3;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SparseStepperTest {
+    static final int SIZE = 256;
+    static final double INNER = 7;
+    static final double OUTER = 3 * INNER;
+    static final double TOLERANCE = 1e-6;
+
+    final double logres = Convolver.logres(SIZE, SIZE);
+    final Convolver full = new Convolver(SIZE, SIZE, INNER, OUTER, logres, (int)fftw3.FFTW_ESTIMATE);
+    final SparseStepper sparse = new SparseStepper(SIZE, SIZE, INNER, OUTER, logres, 1);
+
+    @After
+    public void destroy() {
+        full.destroy();
+        sparse.destroy();
+    }
+
+    static double[] glider_at(int r, int c, int quarter_turns) {
+        double field[] = new double[SIZE * SIZE];
+        SeedPattern.stamp(field, SIZE, SIZE, SeedPattern.GLIDER_SHAPE, 1, quarter_turns, r, c);
+        return field;
+    }
+
+    private void check_convolution(double field[]) {
+        double n_full[] = new double[SIZE * SIZE];
+        double m_full[] = new double[SIZE * SIZE];
+        double n_sparse[] = new double[SIZE * SIZE];
+        double m_sparse[] = new double[SIZE * SIZE];
+        full.convolve(field, n_full, m_full);
+        sparse.update_bounds(field);
+        assertTrue("window not used", sparse.convolve(field, n_sparse, m_sparse));
+        assertArrayEquals("n", n_full, n_sparse, TOLERANCE);
+        assertArrayEquals("m", m_full, m_sparse, TOLERANCE);
+    }
+
+    @Test
+    public void window_matches_full_grid() {
+        check_convolution(glider_at(SIZE / 2, SIZE / 3, 0));
+    }
+
+    @Test
+    public void window_wraps_across_the_edges() {
+        // Straddling the left/right edge, the top/bottom edge, and the corner
+        check_convolution(glider_at(SIZE / 2, 0, 1));
+        check_convolution(glider_at(SIZE - 3, SIZE / 2, 2));
+        check_convolution(glider_at(0, 0, 3));
+    }
+
+    @Test
+    public void covering_arc_takes_the_short_way_round() {
+        boolean flags[] = new boolean[10];
+        flags[9] = true;
+        flags[0] = true;
+        flags[1] = true;
+        int arc[] = SparseStepper.covering_arc(flags);
+        assertEquals(9, arc[0]);
+        assertEquals(3, arc[1]);
+        assertEquals(0, SparseStepper.covering_arc(new boolean[10])[1]);
+    }
+
+    @Test
+    public void busy_field_falls_back_to_full_grid() {
+        double field[] = new double[SIZE * SIZE];
+        for(int i=0; i<field.length; i+=97) {
+            field[i] = 1;
+        }
+        sparse.update_bounds(field);
+        assertFalse(sparse.convolve(field, new double[field.length], new double[field.length]));
+    }
+
+    /** A glider stepped across the corner of the torus, windowed and not. */
+    @Test
+    public void stepping_matches_full_grid() {
+        Rules rules = new SmoothTimestepRules();
+        rules.precalculate(Simulation.RULE_TABLE);
+        double a[] = glider_at(4, SIZE - 6, 3);
+        double b[] = a.clone();
+        double n[] = new double[SIZE * SIZE];
+        double m[] = new double[SIZE * SIZE];
+        for(int step=0; step<10; step++) {
+            full.convolve(a, n, m);
+            rules.s_fast(a, n, m, 0.2);
+            sparse.update_bounds(b);
+            if(!sparse.convolve(b, n, m)) {
+                full.convolve(b, n, m);
+            }
+            rules.s_fast(b, n, m, 0.2);
+            assertArrayEquals("step " + step, a, b, TOLERANCE);
+        }
+        assertEquals(10, sparse.windowed_steps);
+    }
+
+    /** Windows of many shapes, and the cache never adds up to more than its share of the grid. */
+    @Test
+    public void cache_stays_within_its_area() {
+        int sides[] = {10, 40, 60, 80};
+        for(int rows : sides) {
+            for(int cols : sides) {
+                double field[] = new double[SIZE * SIZE];
+                for(int r=0; r<rows; r++) {
+                    field[(100 + r) * SIZE + 100] = 1;
+                }
+                for(int c=0; c<cols; c++) {
+                    field[100 * SIZE + 100 + c] = 1;
+                }
+                sparse.update_bounds(field);
+                sparse.convolve(field, new double[field.length], new double[field.length]);
+                assertTrue(rows + "x" + cols + " cached " + sparse.cache_cells,
+                        sparse.cache_cells <= SparseStepper.MAX_CACHE_AREA * SIZE * SIZE);
+            }
+        }
+        assertTrue(sparse.windowed_steps >= 9);
+    }
+}
@@ -0,0 +1,101 @@
+package ninja.duck.smoothlife;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UserPalettesTest {
+    static final String GOOD = "0,#000000\n1,#ffffff\n";
+    static final String OTHER = "0,#ff0000\n1,#0000ff\n";
+
+    File dir;
+
+    @Before
+    public void make_dir() throws IOException {
+        dir = Files.createTempDirectory("palettes").toFile();
+    }
+
+    @After
+    public void delete_dir() {
+        delete(dir);
+    }
+
+    static void delete(File file) {
+        File files[] = file.listFiles();
+        if(files != null) {
+            for(File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    static InputStream text(String s) {
+        return new ByteArrayInputStream(s.getBytes(Charset.forName("UTF-8")));
+    }
+
+    @Test
+    public void install_replaces_with_a_good_palette() throws IOException {
+        UserPalettes.install(text(GOOD), dir, "test-map.csv");
+        ColorMap map = UserPalettes.install(text(OTHER), dir, "test-map.csv");
+        assertEquals("test-map", map.getName());
+        assertArrayEquals(OTHER.getBytes("UTF-8"), Files.readAllBytes(new File(dir, "test-map.csv").toPath()));
+    }
+
+    @Test
+    public void bad_palette_leaves_the_old_one_alone() throws IOException {
+        UserPalettes.install(text(GOOD), dir, "test-map.csv");
+        try {
+            UserPalettes.install(text("0,#000000\n0.5,nonsense\n"), dir, "test-map.csv");
+            fail("compiled a bad palette");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertArrayEquals(GOOD.getBytes("UTF-8"), Files.readAllBytes(new File(dir, "test-map.csv").toPath()));
+        // And a bad new one leaves nothing behind to be loaded
+        try {
+            UserPalettes.install(text("[1"), dir, "broken.json");
+            fail("compiled a bad palette");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertFalse(new File(dir, "broken.json").exists());
+        UserPalettes.Result result = UserPalettes.load(dir, null);
+        assertEquals(1, result.names.size());
+        assertTrue(result.errors.isEmpty());
+    }
+
+    @Test
+    public void cache_names_strip_exactly_two_fields() {
+        assertEquals("test-map", UserPalettes.cached_name("test-map-1a-18f3c2.bin"));
+        assertEquals("sea", UserPalettes.cached_name("sea-1a-18f3c2.bin"));
+        assertNull(UserPalettes.cached_name("sea-18f3c2.bin"));
+        assertNull(UserPalettes.cached_name("sea-1a-18f3c2.bin.tmp"));
+    }
+
+    /** Caching "sea" must not throw away the table for "sea-dark". */
+    @Test
+    public void caching_keeps_palettes_sharing_a_prefix() throws IOException {
+        File cache = new File(dir, "cache");
+        UserPalettes.install(text(GOOD), dir, "sea-dark.csv");
+        assertEquals(1, UserPalettes.load(dir, cache).compiled);
+        UserPalettes.install(text(OTHER), dir, "sea.csv");
+        assertEquals(1, UserPalettes.load(dir, cache).compiled);
+        assertEquals(0, UserPalettes.load(dir, cache).compiled);
+        assertEquals(2, cache.listFiles().length);
+    }
+}